@@ -0,0 +1,31 @@
+package com.df.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：运行全部基准测试，默认加上GC profiler输出每次操作的分配量(gc.alloc.rate.norm)，
+ * 结果写入jmh-result.json方便和上一次的结果对比。命令行参数和JMH自带的Main相同，例如
+ * java -jar target/benchmarks.jar CodecBenchmark -p codecType=binary
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,76 @@
+package com.df.benchmark;
+
+import com.df.codec.BinaryMessageCodec;
+import com.df.codec.JsonMessageCodec;
+import com.df.codec.MessageCodec;
+import com.df.codec.SerializableMessageCodec;
+import com.df.codec.UserSchema;
+import com.df.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：User在各个编解码器下的编码和解码吞吐量，java为原来的Java序列化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"binary", "json", "java"})
+    public String codecType;
+
+    private MessageCodec codec;
+
+    private User user;
+
+    private byte[] encoded;
+
+    private MessageProperties encodedProperties;
+
+    @Setup
+    public void setup(){
+        switch (codecType) {
+            case "json":
+                codec = new JsonMessageCodec(new ObjectMapper(), "com.df.entity.");
+                break;
+            case "java":
+                codec = new SerializableMessageCodec("com.df.entity.");
+                break;
+            default:
+                codec = new BinaryMessageCodec().register(new UserSchema());
+        }
+        user = new User(10086L, "order-user", "order-user@example.com", "13800000000");
+        encodedProperties = new MessageProperties();
+        encoded = codec.encode(user, encodedProperties);
+    }
+
+    @Benchmark
+    public byte[] encode(){
+        return codec.encode(user, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decode(){
+        return codec.decode(encoded, encodedProperties);
+    }
+}
@@ -0,0 +1,94 @@
+package com.df.benchmark;
+
+import com.df.config.RabbitmqConfirm;
+import com.df.entity.PublishCorrelation;
+import com.df.metrics.RabbitMetrics;
+import com.df.outbox.MessageOutbox;
+import com.df.service.ConfirmTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：发送端登记消息到confirm回调处理完成的开销，redis由进程内替身代替。
+ * ack为正常确认，只操作本地map；ackAfterFailure为先失败一次再确认，会各触发一次redis异步写和删除
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfirmCallbackBenchmark {
+
+    private static final int CORRELATIONS = 1024;
+
+    private ConfirmTracker confirmTracker;
+
+    private RabbitTemplate.ConfirmCallback confirmCallback;
+
+    private PublishCorrelation[] correlations;
+
+    private int next;
+
+    @Setup
+    public void setup(){
+        RabbitMetrics rabbitMetrics = new RabbitMetrics();
+        Stubs.inject(rabbitMetrics, "meterRegistry", new SimpleMeterRegistry());
+        rabbitMetrics.init();
+
+        confirmTracker = new ConfirmTracker();
+        Stubs.inject(confirmTracker, "redissonClient", Stubs.redisson());
+        Stubs.inject(confirmTracker, "ERROR_IN_EXCHANGE", "errorInExchange");
+        Stubs.inject(confirmTracker, "FAILURE_TTL", 600L);
+
+        RabbitmqConfirm rabbitmqConfirm = new RabbitmqConfirm();
+        Stubs.inject(rabbitmqConfirm, "confirmTracker", confirmTracker);
+        Stubs.inject(rabbitmqConfirm, "rabbitMetrics", rabbitMetrics);
+        Stubs.inject(rabbitmqConfirm, "lifecycleJournal", Stubs.journal());
+        //没有写入outbox的消息done直接返回
+        Stubs.inject(rabbitmqConfirm, "messageOutbox", new MessageOutbox());
+        confirmCallback = rabbitmqConfirm.confirmCallback();
+
+        //循环使用固定的一组correlation，避免把创建对象的分配算进来
+        correlations = new PublishCorrelation[CORRELATIONS];
+        for (int i = 0; i < CORRELATIONS; i++) {
+            correlations[i] = new PublishCorrelation("bench-" + i, "directExchange", "directRouteKey");
+        }
+    }
+
+    @Benchmark
+    public void ack(){
+        PublishCorrelation correlation = nextCorrelation();
+        confirmTracker.track(correlation.getId());
+        correlation.setPublishedAt(System.nanoTime());
+        confirmCallback.confirm(correlation, true, null);
+    }
+
+    @Benchmark
+    public void ackAfterFailure(){
+        PublishCorrelation correlation = nextCorrelation();
+        confirmTracker.track(correlation.getId());
+        confirmTracker.failed(correlation.getId());
+        correlation.setPublishedAt(System.nanoTime());
+        confirmCallback.confirm(correlation, true, null);
+    }
+
+    private PublishCorrelation nextCorrelation(){
+        return correlations[next++ & (CORRELATIONS - 1)];
+    }
+}
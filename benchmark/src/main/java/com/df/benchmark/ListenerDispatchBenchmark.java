@@ -0,0 +1,149 @@
+package com.df.benchmark;
+
+import com.df.codec.BinaryMessageCodec;
+import com.df.codec.CodecMessageConverter;
+import com.df.codec.SerializableMessageCodec;
+import com.df.codec.UserSchema;
+import com.df.config.RabbitmqConfirm;
+import com.df.entity.User;
+import com.df.metrics.RabbitMetrics;
+import com.df.service.ConsumerAutoscaler;
+import com.df.service.ConsumerRetryCounter;
+import com.df.service.DeduplicatingMessageListener;
+import com.df.service.DelayedRetryRouter;
+import com.df.service.IdempotencyCache;
+import com.df.service.ReceiveMessage;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：订单队列监听器onMessage的分发开销，包括去重、解码、处理和签收，channel由替身代替。
+ * 监听器取自ReceiveMessage.messageContainer的真实装配，batch=true为批量签收，false为逐条签收。
+ * 消息id循环使用，数量远大于幂等缓存容量，到再次使用时已经被淘汰，不会被当成重复消息
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    private static final int MESSAGES = 1 << 16;
+
+    private static final int DEDUP_SIZE = 4096;
+
+    @Param({"false", "true"})
+    public boolean batch;
+
+    private final LongAdder acks = new LongAdder();
+
+    private final LongAdder rejects = new LongAdder();
+
+    private ChannelAwareMessageListener listener;
+
+    private SimpleMessageListenerContainer container;
+
+    private CachingConnectionFactory connectionFactory;
+
+    private Channel channel;
+
+    private Message[] messages;
+
+    private int next;
+
+    @Setup
+    public void setup(){
+        RabbitMetrics rabbitMetrics = new RabbitMetrics();
+        Stubs.inject(rabbitMetrics, "meterRegistry", new SimpleMeterRegistry());
+        rabbitMetrics.init();
+
+        CodecMessageConverter converter = new CodecMessageConverter(new SerializableMessageCodec("com.df.entity."),
+                new BinaryMessageCodec().register(new UserSchema()));
+        RabbitmqConfirm rabbitmqConfirm = new RabbitmqConfirm();
+        Stubs.inject(rabbitmqConfirm, "codecMessageConverter", converter);
+
+        IdempotencyCache idempotencyCache = new IdempotencyCache();
+        Stubs.inject(idempotencyCache, "ENABLED", true);
+        Stubs.inject(idempotencyCache, "MAX_SIZE", DEDUP_SIZE);
+        Stubs.inject(idempotencyCache, "TTL", 600000L);
+        Stubs.inject(idempotencyCache, "SHARED_ENABLED", false);
+        idempotencyCache.init();
+
+        ReceiveMessage receiveMessage = new ReceiveMessage();
+        Stubs.inject(receiveMessage, "rabbitmqConfirm", rabbitmqConfirm);
+        Stubs.inject(receiveMessage, "idempotencyCache", idempotencyCache);
+        //只在处理失败时使用，成功路径上的clear不访问redis
+        ConsumerRetryCounter consumerRetryCounter = new ConsumerRetryCounter();
+        Stubs.inject(receiveMessage, "consumerRetryCounter", consumerRetryCounter);
+        DelayedRetryRouter delayedRetryRouter = new DelayedRetryRouter();
+        Stubs.inject(delayedRetryRouter, "consumerRetryCounter", consumerRetryCounter);
+        Stubs.inject(receiveMessage, "delayedRetryRouter", delayedRetryRouter);
+        Stubs.inject(receiveMessage, "rabbitMetrics", rabbitMetrics);
+        Stubs.inject(receiveMessage, "lifecycleJournal", Stubs.journal());
+        //固定消费者数量和prefetch，不启动自动调整
+        Stubs.inject(receiveMessage, "consumerAutoscaler", new ConsumerAutoscaler());
+        Stubs.inject(receiveMessage, "BATCH_ENABLED", batch);
+        Stubs.inject(receiveMessage, "BATCH_SIZE", 50);
+        Stubs.inject(receiveMessage, "BATCH_WINDOW", 100L);
+        Stubs.inject(receiveMessage, "ORDER_CONSUMERS", 3);
+        Stubs.inject(receiveMessage, "ORDER_MAX_CONSUMERS", 5);
+        Stubs.inject(receiveMessage, "ORDER_PREFETCH", 10);
+        Stubs.inject(receiveMessage, "orderQueue", new Queue("orderQueue"));
+        Stubs.inject(receiveMessage, "order1Queue", new Queue("order1Queue"));
+
+        //不启动容器，只取出装配好的监听器直接调用
+        connectionFactory = new CachingConnectionFactory();
+        container = receiveMessage.messageContainer(connectionFactory);
+        listener = (ChannelAwareMessageListener) container.getMessageListener();
+        channel = Stubs.channel(acks, rejects);
+
+        messages = new Message[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = converter.toMessage(new User((long) i, "user-" + i, "user-" + i + "@example.com", "13800000000"));
+            MessageProperties properties = message.getMessageProperties();
+            properties.setHeader(DeduplicatingMessageListener.CORRELATION_HEADER, "bench-" + i);
+            properties.setConsumerQueue("orderQueue");
+            properties.setDeliveryTag(i + 1);
+            messages[i] = message;
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        if(rejects.sum() > 0){
+            throw new IllegalStateException("基准测试中有消息被拒绝: " + rejects.sum());
+        }
+        container.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void onMessage() throws Exception {
+        listener.onMessage(messages[next++ & (MESSAGES - 1)], channel);
+    }
+}
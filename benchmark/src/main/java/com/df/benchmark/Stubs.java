@@ -0,0 +1,122 @@
+package com.df.benchmark;
+
+import com.df.journal.LifecycleJournal;
+import com.rabbitmq.client.Channel;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.redisson.misc.RedissonPromise;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：基准测试用的进程内替身，不连接redis和rabbitmq。
+ * redis的异步操作直接返回已完成的RFuture，channel只记录签收和拒绝的次数
+ */
+final class Stubs {
+
+    private Stubs(){}
+
+    //给@Autowired和@Value字段赋值
+    static void inject(Object target, String fieldName, Object value){
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if(field == null){
+            throw new IllegalArgumentException(target.getClass().getName() + "没有字段: " + fieldName);
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    //和默认配置相同的生命周期日志，写入开销计入基准
+    static LifecycleJournal journal(){
+        LifecycleJournal journal = new LifecycleJournal();
+        inject(journal, "ENABLED", true);
+        inject(journal, "CAPACITY", 262144);
+        inject(journal, "DUMP_SIZE", 0);
+        journal.init();
+        return journal;
+    }
+
+    static RedissonClient redisson(){
+        return stub(RedissonClient.class);
+    }
+
+    //basicAck计入acks，basicReject和basicNack计入rejects，其余操作什么都不做
+    static Channel channel(LongAdder acks, LongAdder rejects){
+        return (Channel) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck":
+                            acks.increment();
+                            return null;
+                        case "basicReject":
+                        case "basicNack":
+                            rejects.increment();
+                            return null;
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    //返回接口的方法继续返回替身，RFuture返回已完成的结果
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type){
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Class<?> returnType = method.getReturnType();
+                    if(method.getName().equals("hashCode")){
+                        return System.identityHashCode(proxy);
+                    }
+                    if(method.getName().equals("equals")){
+                        return proxy == args[0];
+                    }
+                    if(RFuture.class.isAssignableFrom(returnType)){
+                        return RedissonPromise.newSucceededFuture(null);
+                    }
+                    if(returnType.isInterface() && returnType.getName().startsWith("org.redisson.api")){
+                        return stub(returnType);
+                    }
+                    return defaultValue(returnType);
+                });
+    }
+
+    private static Object defaultValue(Class<?> type){
+        if(!type.isPrimitive() || type == void.class){
+            return null;
+        }
+        if(type == boolean.class){
+            return false;
+        }
+        if(type == char.class){
+            return (char) 0;
+        }
+        if(type == long.class){
+            return 0L;
+        }
+        if(type == double.class){
+            return 0D;
+        }
+        if(type == float.class){
+            return 0F;
+        }
+        if(type == byte.class){
+            return (byte) 0;
+        }
+        if(type == short.class){
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,57 @@
+package com.df.loadtest;
+
+import com.df.service.DeduplicatingMessageListener;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：在订单队列监听器外包一层，记录每条消息第一次到达消费者的时间(System.nanoTime())。
+ * 发送端和消费端在同一个进程里，和发送时间直接相减就是发布到消费的延迟
+ */
+class ArrivalRecorder implements BeanPostProcessor {
+
+    private static final String CONTAINER = "messageContainer";
+
+    private final Map<String, Long> arrivals = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(CONTAINER.equals(beanName) && bean instanceof SimpleMessageListenerContainer){
+            SimpleMessageListenerContainer container = (SimpleMessageListenerContainer) bean;
+            ChannelAwareMessageListener delegate = (ChannelAwareMessageListener) container.getMessageListener();
+            container.setMessageListener(new ChannelAwareMessageListener() {
+                @Override
+                public void onMessage(Message message, Channel channel) throws Exception {
+                    String id = DeduplicatingMessageListener.correlationId(message);
+                    if(id != null){
+                        //重新投递的消息保留第一次到达的时间
+                        arrivals.putIfAbsent(id, System.nanoTime());
+                    }
+                    delegate.onMessage(message, channel);
+                }
+            });
+        }
+        return bean;
+    }
+
+    Long arrivedAt(String id){
+        return arrivals.get(id);
+    }
+
+    int count(){
+        return arrivals.size();
+    }
+
+    void reset(){
+        arrivals.clear();
+    }
+}
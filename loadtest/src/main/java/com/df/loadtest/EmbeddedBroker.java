@@ -0,0 +1,36 @@
+package com.df.loadtest;
+
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：进程内的Qpid Broker-J，只开AMQP 0-9-1端口，配置和消息都保存在内存中。
+ * 用户guest/guest，虚拟主机为loadtest
+ */
+class EmbeddedBroker {
+
+    static final String VIRTUAL_HOST = "loadtest";
+
+    private final SystemLauncher launcher = new SystemLauncher();
+
+    void start(int port) throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION,
+                EmbeddedBroker.class.getResource("/qpid-config.json").toExternalForm());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        attributes.put(SystemConfig.CONTEXT, Collections.singletonMap("qpid.amqp_port", String.valueOf(port)));
+        launcher.startup(attributes);
+    }
+
+    void stop(){
+        launcher.shutdown();
+    }
+}
@@ -0,0 +1,153 @@
+package com.df.loadtest;
+
+import com.df.codec.CodecMessageConverter;
+import com.df.entity.PublishCorrelation;
+import com.df.entity.User;
+import com.df.metrics.RabbitMetrics;
+import com.df.service.SendMessage;
+import com.df.service.TokenBucket;
+import org.springframework.amqp.AmqpException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：按固定速率通过SendMessage.send发送订单消息，统计confirm、退回以及发布到消费的延迟。
+ * 发送时间取PublishCorrelation.publishedAt，即basicPublish之前的时间
+ */
+class LoadGenerator {
+
+    private static final String UNROUTABLE_KEY = "loadtest.unroutable";
+
+    //每种消息大小预先生成的消息数量，循环发送
+    private static final int USERS = 256;
+
+    private final SendMessage sendMessage;
+
+    private final CodecMessageConverter codecMessageConverter;
+
+    private final RabbitMetrics rabbitMetrics;
+
+    private final ArrivalRecorder arrivals;
+
+    private final LoadTestOptions options;
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    LoadGenerator(ApplicationContext context, ArrivalRecorder arrivals, LoadTestOptions options){
+        this.sendMessage = context.getBean(SendMessage.class);
+        this.codecMessageConverter = context.getBean(CodecMessageConverter.class);
+        this.rabbitMetrics = context.getBean(RabbitMetrics.class);
+        this.arrivals = arrivals;
+        this.options = options;
+        Environment environment = context.getEnvironment();
+        this.exchange = environment.getProperty("order.exchange_name");
+        this.routingKey = environment.getProperty("order.routing_key_name");
+    }
+
+    ScenarioResult run(int rate, int payload, int seconds) throws Exception {
+        User[] users = users(payload);
+        ScenarioResult result = new ScenarioResult(rate, payload, codecMessageConverter.toMessage(users[0]).getBody().length);
+        arrivals.reset();
+        Map<String, Long> published = new ConcurrentHashMap<>();
+        LongAdder sent = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder acks = new LongAdder();
+        LongAdder nacks = new LongAdder();
+        long returnedBefore = rabbitMetrics.returnedCount();
+        //最多攒10ms的突发量
+        TokenBucket bucket = new TokenBucket(rate, Math.max(1, rate / 100D));
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService publishers = Executors.newFixedThreadPool(options.threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < options.threads; t++) {
+            Random random = new Random(t);
+            futures.add(publishers.submit(() -> {
+                int next = 0;
+                while (System.nanoTime() < end) {
+                    bucket.acquire(1);
+                    boolean unroutable = options.unroutable > 0 && random.nextDouble() < options.unroutable;
+                    try {
+                        PublishCorrelation correlation = (PublishCorrelation) sendMessage.send(exchange,
+                                unroutable ? UNROUTABLE_KEY : routingKey, users[next++ & (USERS - 1)]);
+                        if(!unroutable){
+                            published.put(correlation.getId(), correlation.getPublishedAt());
+                        }
+                        correlation.getFuture().addCallback(
+                                confirm -> (confirm.isAck() ? acks : nacks).increment(),
+                                e -> errors.increment());
+                        sent.increment();
+                    } catch (AmqpException e) {
+                        errors.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        publishers.shutdown();
+        long publishEnd = System.nanoTime();
+
+        //等待全部消费和confirm，超时后剩下的记为丢失
+        long drainDeadline = publishEnd + TimeUnit.SECONDS.toNanos(options.drainTimeout);
+        while (System.nanoTime() < drainDeadline
+                && (arrivals.count() < published.size() || acks.sum() + nacks.sum() < sent.sum())) {
+            Thread.sleep(10);
+        }
+
+        long[] latencies = new long[published.size()];
+        int count = 0;
+        long lastArrival = start;
+        for (Map.Entry<String, Long> entry : published.entrySet()) {
+            Long arrivedAt = arrivals.arrivedAt(entry.getKey());
+            if(arrivedAt != null && count < latencies.length){
+                latencies[count++] = arrivedAt - entry.getValue();
+                lastArrival = Math.max(lastArrival, arrivedAt);
+            }
+        }
+        result.sent = sent.sum();
+        result.routed = published.size();
+        result.consumed = count;
+        result.sendErrors = errors.sum();
+        result.acks = acks.sum();
+        result.nacks = nacks.sum();
+        result.returns = rabbitMetrics.returnedCount() - returnedBefore;
+        result.publishSeconds = (publishEnd - start) / 1e9;
+        result.consumeSeconds = (lastArrival - start) / 1e9;
+        result.latencies(latencies, count);
+        return result;
+    }
+
+    //用户名按payload长度随机生成，种子固定保证每次压测的消息内容相同
+    private static User[] users(int payload){
+        Random random = new Random(payload);
+        User[] users = new User[USERS];
+        char[] name = new char[payload];
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 0; j < payload; j++) {
+                name[j] = (char) ('a' + random.nextInt(26));
+            }
+            users[i] = new User((long) i, new String(name), "loadtest@example.com", "13800000000");
+        }
+        return users;
+    }
+}
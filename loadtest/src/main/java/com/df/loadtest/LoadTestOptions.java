@@ -0,0 +1,64 @@
+package com.df.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：压测参数，命令行格式为 --name=value，多个值用逗号分隔。
+ * 每个发送速率和消息大小的组合各跑一轮，参数相同时生成的消息内容也相同
+ */
+class LoadTestOptions {
+
+    //目标发送速率(条/s)
+    final List<Integer> rates;
+    //消息中用户名的字节数，用来控制消息大小
+    final List<Integer> payloads;
+    //每轮发送的时间(s)
+    final int duration;
+    //正式测量前的预热时间(s)
+    final int warmup;
+    //发送线程数
+    final int threads;
+    //发往没有绑定的routingKey的比例，用来测量退回
+    final double unroutable;
+    //发送结束后等待消费和confirm的最长时间(s)
+    final int drainTimeout;
+    //结果输出的csv文件
+    final String output;
+
+    private LoadTestOptions(Map<String, String> values){
+        rates = ints(values.getOrDefault("rates", "1000,5000"));
+        payloads = ints(values.getOrDefault("payloads", "128,1024"));
+        duration = Integer.parseInt(values.getOrDefault("duration", "30"));
+        warmup = Integer.parseInt(values.getOrDefault("warmup", "5"));
+        threads = Integer.parseInt(values.getOrDefault("threads", "4"));
+        unroutable = Double.parseDouble(values.getOrDefault("unroutable", "0"));
+        drainTimeout = Integer.parseInt(values.getOrDefault("drain_timeout", "30"));
+        output = values.getOrDefault("output", "loadtest-result.csv");
+    }
+
+    static LoadTestOptions parse(String[] args){
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if(!arg.startsWith("--") || split < 0){
+                throw new IllegalArgumentException("参数格式为 --name=value: " + arg);
+            }
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return new LoadTestOptions(values);
+    }
+
+    private static List<Integer> ints(String value){
+        List<Integer> list = new ArrayList<>();
+        for (String item : value.split(",")) {
+            list.add(Integer.parseInt(item.trim()));
+        }
+        return list;
+    }
+}
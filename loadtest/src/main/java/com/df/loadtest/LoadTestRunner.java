@@ -0,0 +1,89 @@
+package com.df.loadtest;
+
+import com.df.SpringAmqpApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：端到端压测入口。启动内嵌的Qpid Broker-J和redis，应用连到这两个服务上，
+ * 然后按每个发送速率和消息大小的组合发送一轮，输出吞吐量、发布到消费的p50/p99/p999延迟以及confirm和退回的速率。
+ * 例如 java -jar target/loadtest.jar --rates=1000,5000,20000 --payloads=128,4096 --duration=60
+ */
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        int amqpPort = freePort();
+        int redisPort = freePort();
+        File workDir = Files.createTempDirectory("df-loadtest").toFile();
+
+        EmbeddedBroker broker = new EmbeddedBroker();
+        RedisServer redis = new RedisServer(redisPort);
+        ArrivalRecorder arrivals = new ArrivalRecorder();
+        ConfigurableApplicationContext context = null;
+        broker.start(amqpPort);
+        redis.start();
+        try {
+            context = new SpringApplicationBuilder(SpringAmqpApplication.class)
+                    .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(arrivals))
+                    .run("--server.port=0",
+                            "--spring.rabbitmq.host=127.0.0.1",
+                            "--spring.rabbitmq.port=" + amqpPort,
+                            "--spring.rabbitmq.username=guest",
+                            "--spring.rabbitmq.password=guest",
+                            "--spring.rabbitmq.virtual-host=" + EmbeddedBroker.VIRTUAL_HOST,
+                            "--redisson.address=redis://127.0.0.1:" + redisPort,
+                            "--redisson.password=",
+                            "--outbox.dir=" + new File(workDir, "outbox").getPath(),
+                            "--replay.quarantine_file=" + new File(workDir, "quarantine/dead-letter.dat").getPath());
+
+            LoadGenerator generator = new LoadGenerator(context, arrivals, options);
+            if(options.warmup > 0){
+                System.out.println("预热: " + generator.run(options.rates.get(0), options.payloads.get(0), options.warmup));
+            }
+            List<ScenarioResult> results = new ArrayList<>();
+            for (int payload : options.payloads) {
+                for (int rate : options.rates) {
+                    ScenarioResult result = generator.run(rate, payload, options.duration);
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+            write(results, options.output);
+        } finally {
+            if(context != null){
+                context.close();
+            }
+            redis.stop();
+            broker.stop();
+        }
+    }
+
+    private static void write(List<ScenarioResult> results, String output) throws IOException {
+        try (PrintWriter writer = new PrintWriter(output, "UTF-8")) {
+            writer.println(ScenarioResult.CSV_HEADER);
+            for (ScenarioResult result : results) {
+                writer.println(result.toCsv());
+            }
+        }
+        System.out.println("结果已写入: " + new File(output).getAbsolutePath());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.df.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：一轮压测的结果，延迟单位为纳秒，速率按发送阶段的时长计算
+ */
+class ScenarioResult {
+
+    static final String CSV_HEADER = "rate,payload,body_bytes,sent,consumed,lost,send_errors,"
+            + "publish_rate,consume_rate,p50_ms,p99_ms,p999_ms,max_ms,ack_rate,nack_rate,return_rate";
+
+    final int rate;
+    final int payload;
+    final int bodyBytes;
+    long sent;
+    long consumed;
+    long routed;
+    long sendErrors;
+    long acks;
+    long nacks;
+    long returns;
+    //第一条发送到最后一条发送
+    double publishSeconds;
+    //第一条发送到最后一条到达消费者
+    double consumeSeconds;
+    long p50;
+    long p99;
+    long p999;
+    long max;
+
+    ScenarioResult(int rate, int payload, int bodyBytes){
+        this.rate = rate;
+        this.payload = payload;
+        this.bodyBytes = bodyBytes;
+    }
+
+    //latencies中前count个为有效值，会被排序
+    void latencies(long[] latencies, int count){
+        if(count == 0){
+            return;
+        }
+        Arrays.sort(latencies, 0, count);
+        p50 = percentile(latencies, count, 0.50);
+        p99 = percentile(latencies, count, 0.99);
+        p999 = percentile(latencies, count, 0.999);
+        max = latencies[count - 1];
+    }
+
+    private static long percentile(long[] sorted, int count, double quantile){
+        int index = (int) Math.ceil(quantile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    String toCsv(){
+        return String.format("%d,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.3f,%.3f,%.3f,%.3f,%.1f,%.1f,%.1f",
+                rate, payload, bodyBytes, sent, consumed, routed - consumed, sendErrors,
+                sent / publishSeconds, consumeSeconds > 0 ? consumed / consumeSeconds : 0D,
+                millis(p50), millis(p99), millis(p999), millis(max),
+                acks / publishSeconds, nacks / publishSeconds, returns / publishSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rate=%d/s payload=%dB(body %dB) sent=%d consumed=%d lost=%d errors=%d | "
+                        + "publish %.0f/s consume %.0f/s | p50 %.3fms p99 %.3fms p999 %.3fms max %.3fms | "
+                        + "ack %.0f/s nack %.1f/s return %.1f/s",
+                rate, payload, bodyBytes, sent, consumed, routed - consumed, sendErrors,
+                sent / publishSeconds, consumeSeconds > 0 ? consumed / consumeSeconds : 0D,
+                millis(p50), millis(p99), millis(p999), millis(max),
+                acks / publishSeconds, nacks / publishSeconds, returns / publishSeconds);
+    }
+
+    private static double millis(long nanos){
+        return nanos / 1_000_000D;
+    }
+}
@@ -0,0 +1,75 @@
+package com.df.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：紧凑的二进制编码。消息体 = 类型标识(1字节) + 按schema顺序写入的字段
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-df-binary";
+
+    private final Map<Integer, BinarySchema<?>> schemaById = new HashMap<>();
+
+    private final Map<Class<?>, BinarySchema<?>> schemaByType = new HashMap<>();
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    //超过这个容量的写入缓冲用完后丢弃，偶尔的大消息不一直占用内存
+    private static final int MAX_RETAINED = 1 << 20;
+
+    //每个线程复用一个写入缓冲，编码时只在最后复制一次结果
+    private final ThreadLocal<BinaryWriter> writers = ThreadLocal.withInitial(() -> new BinaryWriter(INITIAL_CAPACITY));
+
+    public BinaryMessageCodec register(BinarySchema<?> schema){
+        schemaById.put(schema.getTypeId(), schema);
+        schemaByType.put(schema.getType(), schema);
+        return this;
+    }
+
+    @Override
+    public boolean supports(Class<?> type){
+        return schemaByType.containsKey(type);
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object entity, MessageProperties properties) {
+        BinarySchema<Object> schema = (BinarySchema<Object>) schemaByType.get(entity.getClass());
+        if(schema == null){
+            throw new MessageConversionException("没有注册二进制schema: " + entity.getClass().getName());
+        }
+        BinaryWriter writer = writers.get();
+        writer.reset();
+        writer.writeByte(schema.getTypeId());
+        schema.write(entity, writer);
+        byte[] body = writer.toByteArray();
+        if(writer.capacity() > MAX_RETAINED){
+            writers.remove();
+        }
+        return body;
+    }
+
+    @Override
+    public Object decode(byte[] body, MessageProperties properties) {
+        BinaryReader reader = new BinaryReader(body);
+        int typeId = reader.readByte();
+        BinarySchema<?> schema = schemaById.get(typeId);
+        if(schema == null){
+            throw new MessageConversionException("未知的二进制类型标识: " + typeId);
+        }
+        return schema.read(reader);
+    }
+}
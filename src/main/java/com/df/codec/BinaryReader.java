@@ -0,0 +1,70 @@
+package com.df.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：BinaryWriter对应的读取端
+ */
+public class BinaryReader {
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    public BinaryReader(byte[] buffer){
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length){
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte(){
+        check(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    public long readVarLong(){
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            check(1);
+            byte b = buffer[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint格式错误");
+    }
+
+    public long readSignedVarLong(){
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString(){
+        int length = (int) readVarLong() - 1;
+        if(length < 0){
+            return null;
+        }
+        check(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public boolean hasRemaining(){
+        return position < limit;
+    }
+
+    private void check(int length){
+        if(length > limit - position){
+            throw new IllegalStateException("消息体长度不足, 需要: " + length + " 剩余: " + (limit - position));
+        }
+    }
+}
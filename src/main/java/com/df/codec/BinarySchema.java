@@ -0,0 +1,19 @@
+package com.df.codec;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：二进制编码的实体结构描述，按固定的字段顺序读写，不写字段名
+ */
+public interface BinarySchema<T> {
+
+    //写在消息体第一个字节的类型标识，注册后不能修改
+    int getTypeId();
+
+    Class<T> getType();
+
+    void write(T entity, BinaryWriter writer);
+
+    T read(BinaryReader reader);
+}
@@ -0,0 +1,98 @@
+package com.df.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：二进制编码的写入缓冲，整数使用varint，字符串使用长度前缀的UTF-8
+ */
+public class BinaryWriter {
+
+    private byte[] buffer;
+    private int position;
+
+    public BinaryWriter(int initialCapacity){
+        this.buffer = new byte[initialCapacity];
+    }
+
+    //复用之前清空写入位置
+    public void reset(){
+        position = 0;
+    }
+
+    public int size(){
+        return position;
+    }
+
+    //当前缓冲的容量
+    public int capacity(){
+        return buffer.length;
+    }
+
+    public void writeByte(int value){
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    //无符号varint，每个字节7位
+    public void writeVarLong(long value){
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    //zigzag编码，负数也只占少量字节
+    public void writeSignedVarLong(long value){
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    //长度+1写入，0表示null
+    public void writeString(String value){
+        if(value == null){
+            writeVarLong(0);
+            return;
+        }
+        int length = value.length();
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if(value.charAt(i) >= 0x80){
+                ascii = false;
+                break;
+            }
+        }
+        if(ascii){
+            //纯ASCII直接写入，不产生中间数组
+            writeVarLong(length + 1);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        }else{
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length){
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    public byte[] toByteArray(){
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int extra){
+        if(position + extra > buffer.length){
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + extra));
+        }
+    }
+}
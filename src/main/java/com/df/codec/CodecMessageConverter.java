@@ -0,0 +1,112 @@
+package com.df.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：基于MessageCodec的消息转换。发送时按顺序使用第一个支持该类型的编码，
+ * 接收按content_type选择编码，只有content_type明确是java序列化的消息才按java反序列化，没有content_type或者不认识的直接拒绝。
+ * 设置压缩后，编码结果达到阈值的消息体压缩并写入content_encoding，压缩后没有变小的保持原样；
+ * 接收时content_encoding是已知的压缩方式就先解压，小消息不经过压缩也不多一次拷贝
+ */
+public class CodecMessageConverter implements MessageConverter {
+
+    //发送端按优先级排列的编码
+    private final MessageCodec[] encoders;
+
+    private final MessageCodec fallbackCodec;
+
+    private final Map<String, MessageCodec> codecs = new HashMap<>();
+
+    private final Map<String, MessageCompressor> decompressors = new HashMap<>();
+
+    //发送端使用的压缩，为空时不压缩
+    private MessageCompressor compressor;
+
+    //消息体达到这个字节数才压缩
+    private int compressThreshold = Integer.MAX_VALUE;
+
+    public CodecMessageConverter(MessageCodec fallbackCodec, MessageCodec... encoders){
+        this.encoders = encoders;
+        this.fallbackCodec = fallbackCodec;
+        codecs.put(fallbackCodec.getContentType(), fallbackCodec);
+        for (MessageCodec codec : encoders) {
+            codecs.put(codec.getContentType(), codec);
+        }
+    }
+
+    //接收端额外支持的编码
+    public CodecMessageConverter addDecoder(MessageCodec codec){
+        codecs.put(codec.getContentType(), codec);
+        return this;
+    }
+
+    //发送端压缩，接收端同时支持该压缩方式
+    public CodecMessageConverter setCompression(MessageCompressor compressor, int threshold){
+        this.compressor = compressor;
+        this.compressThreshold = threshold;
+        return addDecompressor(compressor);
+    }
+
+    //接收端额外支持的压缩方式
+    public CodecMessageConverter addDecompressor(MessageCompressor compressor){
+        decompressors.put(compressor.getEncoding(), compressor);
+        return this;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        MessageCodec codec = selectEncoder(object.getClass());
+        byte[] body = codec.encode(object, messageProperties);
+        messageProperties.setContentType(codec.getContentType());
+        if(compressor != null && body.length >= compressThreshold){
+            byte[] compressed = compressor.compress(body);
+            if(compressed.length < body.length){
+                body = compressed;
+                messageProperties.setContentEncoding(compressor.getEncoding());
+            }
+        }
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    //按默认编码生成消息
+    public Message toMessage(Object object){
+        return toMessage(object, new MessageProperties());
+    }
+
+    private MessageCodec selectEncoder(Class<?> type){
+        for (MessageCodec codec : encoders) {
+            if(codec.supports(type)){
+                return codec;
+            }
+        }
+        return fallbackCodec;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        MessageProperties properties = message.getMessageProperties();
+        MessageCodec codec = properties.getContentType() == null ? null : codecs.get(properties.getContentType());
+        if(codec == null){
+            //不能把来源不明的消息体交给java反序列化
+            throw new MessageConversionException("不支持的content_type: " + properties.getContentType());
+        }
+        return codec.decode(decompress(message.getBody(), properties), properties);
+    }
+
+    //content_encoding不是压缩方式(例如字符集)时原样返回
+    private byte[] decompress(byte[] body, MessageProperties properties){
+        String encoding = properties.getContentEncoding();
+        MessageCompressor decompressor = encoding == null ? null : decompressors.get(encoding);
+        return decompressor == null ? body : decompressor.decompress(body);
+    }
+}
@@ -0,0 +1,82 @@
+package com.df.codec;
+
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：deflate压缩，使用JDK自带的zlib实现。Deflater/Inflater和中间缓冲按线程复用，
+ * 不必每条消息重新分配zlib的内部状态。解压后超过maxInflatedSize的消息体直接失败，不会因为高压缩比的消息占满内存
+ */
+public class DeflateCompressor implements MessageCompressor {
+
+    public static final String ENCODING = "deflate";
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    private final ThreadLocal<byte[]> chunks = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final int maxInflatedSize;
+
+    public DeflateCompressor(int level, int maxInflatedSize){
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public byte[] compress(byte[] body) {
+        Deflater deflater = deflaters.get();
+        PooledOutputStream out = PooledOutputStream.acquire();
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = chunks.get();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            out.release();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) {
+        Inflater inflater = inflaters.get();
+        PooledOutputStream out = PooledOutputStream.acquire();
+        try {
+            inflater.setInput(body);
+            byte[] buffer = chunks.get();
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    throw new MessageConversionException("deflate消息体不完整");
+                }
+                if(out.size() + n > maxInflatedSize){
+                    throw new MessageConversionException("deflate解压后超过" + maxInflatedSize + "字节");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new MessageConversionException("deflate解压失败", e);
+        } finally {
+            inflater.reset();
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.df.codec;
+
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：gzip压缩，比deflate多一个头和校验，方便其他语言的客户端解压。解压后超过maxInflatedSize的消息体直接失败
+ */
+public class GzipCompressor implements MessageCompressor {
+
+    public static final String ENCODING = "gzip";
+
+    private final int maxInflatedSize;
+
+    public GzipCompressor(int maxInflatedSize){
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    public byte[] compress(byte[] body) {
+        PooledOutputStream out = PooledOutputStream.acquire();
+        try {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new MessageConversionException("gzip压缩失败", e);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) {
+        PooledOutputStream out = PooledOutputStream.acquire();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = gzip.read(buffer)) > 0) {
+                if(out.size() + n > maxInflatedSize){
+                    throw new MessageConversionException("gzip解压后超过" + maxInflatedSize + "字节");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new MessageConversionException("gzip解压失败", e);
+        } finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.df.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：JSON编码，类型写入__TypeId__ header，只允许反序列化信任包下的类
+ */
+public class JsonMessageCodec implements MessageCodec {
+
+    public static final String TYPE_ID_HEADER = "__TypeId__";
+
+    private final ObjectMapper objectMapper;
+
+    private final String trustedPackage;
+
+    public JsonMessageCodec(ObjectMapper objectMapper, String trustedPackage){
+        this.objectMapper = objectMapper;
+        this.trustedPackage = trustedPackage;
+    }
+
+    @Override
+    public String getContentType() {
+        return MessageProperties.CONTENT_TYPE_JSON;
+    }
+
+    @Override
+    public byte[] encode(Object entity, MessageProperties properties) {
+        properties.setHeader(TYPE_ID_HEADER, entity.getClass().getName());
+        try {
+            return objectMapper.writeValueAsBytes(entity);
+        } catch (IOException e) {
+            throw new MessageConversionException("JSON编码失败", e);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] body, MessageProperties properties) {
+        Object typeId = properties.getHeaders().get(TYPE_ID_HEADER);
+        if(typeId == null || !typeId.toString().startsWith(trustedPackage)){
+            throw new MessageConversionException("不支持的JSON消息类型: " + typeId);
+        }
+        try {
+            Class<?> type = ClassUtils.forName(typeId.toString(), ClassUtils.getDefaultClassLoader());
+            return objectMapper.readValue(body, type);
+        } catch (ClassNotFoundException | IOException e) {
+            throw new MessageConversionException("JSON解码失败", e);
+        }
+    }
+}
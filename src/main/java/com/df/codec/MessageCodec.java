@@ -0,0 +1,26 @@
+package com.df.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息体编解码。发送端根据配置选择编码，消费端根据content_type选择解码
+ */
+public interface MessageCodec {
+
+    //写入消息content_type的值
+    String getContentType();
+
+    //是否能编码该类型，不能时发送端顺延到下一个编码
+    default boolean supports(Class<?> type){
+        return true;
+    }
+
+    //编码实体，需要的类型信息可以写入properties的header中
+    byte[] encode(Object entity, MessageProperties properties);
+
+    //解码消息体
+    Object decode(byte[] body, MessageProperties properties);
+}
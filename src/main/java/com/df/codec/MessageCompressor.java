@@ -0,0 +1,17 @@
+package com.df.codec;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息体压缩。发送端超过阈值的消息体压缩后写入content_encoding，消费端按content_encoding解压
+ */
+public interface MessageCompressor {
+
+    //写入消息content_encoding的值
+    String getEncoding();
+
+    byte[] compress(byte[] body);
+
+    byte[] decompress(byte[] body);
+}
@@ -0,0 +1,44 @@
+package com.df.codec;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：编码和压缩使用的输出缓冲，每个线程复用一个，只在最后复制一次结果。
+ * 同一线程嵌套使用时临时新建一个，超过MAX_RETAINED的缓冲用完后不保留
+ */
+public class PooledOutputStream extends ByteArrayOutputStream {
+
+    //偶尔出现的大消息不一直占用内存
+    private static final int MAX_RETAINED = 1 << 20;
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private static final ThreadLocal<PooledOutputStream> POOL = ThreadLocal.withInitial(PooledOutputStream::new);
+
+    private boolean inUse;
+
+    private PooledOutputStream(){
+        super(INITIAL_SIZE);
+    }
+
+    //使用完必须调用release
+    public static PooledOutputStream acquire(){
+        PooledOutputStream out = POOL.get();
+        if(out.inUse){
+            out = new PooledOutputStream();
+        }
+        out.inUse = true;
+        out.reset();
+        return out;
+    }
+
+    public void release(){
+        inUse = false;
+        if(buf.length > MAX_RETAINED){
+            buf = new byte[INITIAL_SIZE];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.df.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：原来的java序列化方式，用于兼容升级前已经在队列中的消息。
+ * 反序列化只允许信任包下的类和JDK的基础类型，其它类在实例化之前就拒绝
+ */
+public class SerializableMessageCodec implements MessageCodec {
+
+    //JDK中允许出现在消息体里的包
+    private static final String[] JDK_PACKAGES = {"java.lang.", "java.util.", "java.math.", "java.time."};
+
+    //只反序列化这个包下的类
+    private final String trustedPackage;
+
+    public SerializableMessageCodec(String trustedPackage){
+        this.trustedPackage = trustedPackage;
+    }
+
+    @Override
+    public String getContentType() {
+        return MessageProperties.CONTENT_TYPE_SERIALIZED_OBJECT;
+    }
+
+    @Override
+    public byte[] encode(Object entity, MessageProperties properties) {
+        PooledOutputStream byteArray = PooledOutputStream.acquire();
+        try {
+            try (ObjectOutputStream ops = new ObjectOutputStream(byteArray)) {
+                ops.writeObject(entity);
+            }
+            return byteArray.toByteArray();
+        } catch (IOException e) {
+            throw new MessageConversionException("java序列化失败", e);
+        } finally {
+            byteArray.release();
+        }
+    }
+
+    @Override
+    public Object decode(byte[] body, MessageProperties properties) {
+        try (ObjectInputStream ois = new FilteringObjectInputStream(new ByteArrayInputStream(body))) {
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MessageConversionException("java反序列化失败", e);
+        }
+    }
+
+    private boolean isAllowed(String className){
+        //数组按元素类型判断，基本类型数组直接允许
+        String name = className;
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+        if(name.length() == 1){
+            return true;
+        }
+        if(name.startsWith("L") && name.endsWith(";")){
+            name = name.substring(1, name.length() - 1);
+        }
+        if(name.startsWith(trustedPackage)){
+            return true;
+        }
+        for (String jdkPackage : JDK_PACKAGES) {
+            if(name.startsWith(jdkPackage)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class FilteringObjectInputStream extends ObjectInputStream {
+
+        private FilteringObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if(!isAllowed(desc.getName())){
+                throw new InvalidClassException(desc.getName(), "不在允许反序列化的范围内");
+            }
+            return super.resolveClass(desc);
+        }
+
+        //消息体里不会有动态代理
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("不允许反序列化动态代理");
+        }
+    }
+}
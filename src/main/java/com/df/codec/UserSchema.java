@@ -0,0 +1,42 @@
+package com.df.codec;
+
+import com.df.entity.User;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：User的二进制结构  id | username | email | tel
+ */
+public class UserSchema implements BinarySchema<User> {
+
+    public static final int TYPE_ID = 1;
+
+    @Override
+    public int getTypeId() {
+        return TYPE_ID;
+    }
+
+    @Override
+    public Class<User> getType() {
+        return User.class;
+    }
+
+    @Override
+    public void write(User user, BinaryWriter writer) {
+        writer.writeSignedVarLong(user.getId());
+        writer.writeString(user.getUsername());
+        writer.writeString(user.getEmail());
+        writer.writeString(user.getTel());
+    }
+
+    @Override
+    public User read(BinaryReader reader) {
+        User user = new User();
+        user.setId(reader.readSignedVarLong());
+        user.setUsername(reader.readString());
+        user.setEmail(reader.readString());
+        user.setTel(reader.readString());
+        return user;
+    }
+}
@@ -0,0 +1,73 @@
+package com.df.config;
+
+import com.df.codec.BinaryMessageCodec;
+import com.df.codec.CodecMessageConverter;
+import com.df.codec.DeflateCompressor;
+import com.df.codec.GzipCompressor;
+import com.df.codec.JsonMessageCodec;
+import com.df.codec.MessageCodec;
+import com.df.codec.SerializableMessageCodec;
+import com.df.codec.UserSchema;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息编解码配置，发送端默认编码由codec.default_type决定，
+ * 压缩方式由codec.compression决定，接收端总是支持deflate和gzip
+ */
+@Configuration
+public class CodecConfig {
+
+    //binary / json / java
+    @Value("${codec.default_type}")
+    private String DEFAULT_TYPE;
+
+    //none / deflate / gzip
+    @Value("${codec.compression}")
+    private String COMPRESSION;
+    //消息体达到这个字节数才压缩
+    @Value("${codec.compress_threshold}")
+    private int COMPRESS_THRESHOLD;
+    //deflate压缩级别 1-9
+    @Value("${codec.compress_level}")
+    private int COMPRESS_LEVEL;
+    //解压后消息体的上限(byte)，超过的消息解压失败
+    @Value("${codec.max_inflated_size}")
+    private int MAX_INFLATED_SIZE;
+
+    @Bean
+    public CodecMessageConverter codecMessageConverter(ObjectMapper objectMapper){
+        CodecMessageConverter converter = createConverter(objectMapper);
+        DeflateCompressor deflate = new DeflateCompressor(COMPRESS_LEVEL, MAX_INFLATED_SIZE);
+        GzipCompressor gzip = new GzipCompressor(MAX_INFLATED_SIZE);
+        converter.addDecompressor(deflate).addDecompressor(gzip);
+        switch (COMPRESSION) {
+            case DeflateCompressor.ENCODING:
+                return converter.setCompression(deflate, COMPRESS_THRESHOLD);
+            case GzipCompressor.ENCODING:
+                return converter.setCompression(gzip, COMPRESS_THRESHOLD);
+            default:
+                return converter;
+        }
+    }
+
+    private CodecMessageConverter createConverter(ObjectMapper objectMapper){
+        MessageCodec binary = new BinaryMessageCodec().register(new UserSchema());
+        MessageCodec json = new JsonMessageCodec(objectMapper, "com.df.entity.");
+        MessageCodec java = new SerializableMessageCodec("com.df.entity.");
+        switch (DEFAULT_TYPE) {
+            case "json":
+                return new CodecMessageConverter(java, json).addDecoder(binary);
+            case "java":
+                return new CodecMessageConverter(java).addDecoder(binary).addDecoder(json);
+            default:
+                //没有二进制schema的类型使用JSON
+                return new CodecMessageConverter(java, binary, json);
+        }
+    }
+}
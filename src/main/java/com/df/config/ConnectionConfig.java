@@ -1,7 +1,9 @@
 package com.df.config;
 
 
+import com.df.codec.CodecMessageConverter;
 import com.df.entity.User;
+import com.df.service.DelayedRetryRouter;
 import com.rabbitmq.client.Channel;
 import org.omg.CORBA.TRANSACTION_MODE;
 import org.springframework.amqp.core.*;
@@ -19,7 +21,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -32,6 +36,9 @@ import java.util.UUID;
 @Configuration
 public class ConnectionConfig {
 
+    //消费端连接获取channel的超时时间(ms)，运行时可以由RuntimeTuner调整
+    public static final long CHANNEL_CHECKOUT_TIMEOUT = 1000;
+
     @Value("${spring.rabbitmq.host}")
     private String host;
     @Value("${spring.rabbitmq.port}")
@@ -67,9 +74,21 @@ public class ConnectionConfig {
     @Value("dead_order.dead_routing_key")
     private String DEAD_ROUTING_KEY;
 
+    //延迟重试队列
+    @Value("${retry_tiers.enabled}")
+    private boolean RETRY_TIERS_ENABLED;
+    @Value("${retry_tiers.delays}")
+    private long[] RETRY_DELAYS;
+    @Value("${retry_tiers.queue_prefix}")
+    private String RETRY_QUEUE_PREFIX;
+
     @Autowired
     RabbitmqConfirm rabbitmqConfirm;
 
+    @Autowired
+    CodecMessageConverter codecMessageConverter;
+
+    //消费者、RabbitAdmin使用的连接，发送消息走PublisherPool中的独立连接
     @Bean
     public ConnectionFactory connectionFactory(){
         CachingConnectionFactory factory=new CachingConnectionFactory();
@@ -78,7 +97,7 @@ public class ConnectionConfig {
         //设置默认缓存的channel数量
         factory.setChannelCacheSize(25);
         //设置最大并超时时间，最大不能超过25. 如果超过这个值并且持续超时时间以上，则会出现超时异常
-        factory.setChannelCheckoutTimeout(1000);
+        factory.setChannelCheckoutTimeout(CHANNEL_CHECKOUT_TIMEOUT);
         factory.setHost(host);
         factory.setPort(port);
         factory.setUsername(username);
@@ -86,6 +105,7 @@ public class ConnectionConfig {
         factory.setVirtualHost(virtualHost);
         factory.setPublisherConfirms(true);
         factory.setPublisherReturns(true);
+        factory.setConnectionNameStrategy(connectionFactory -> "consumer");
         return factory;
     }
 
@@ -94,6 +114,8 @@ public class ConnectionConfig {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory());
         //开启后可以使用进入队列的判断。并将错误数据传入message的body中
         rabbitTemplate.setMandatory(true);
+        //使用MessageCodec编码消息体，替代默认的java序列化
+        rabbitTemplate.setMessageConverter(codecMessageConverter);
         return rabbitTemplate;
     }
 
@@ -139,6 +161,26 @@ public class ConnectionConfig {
 
 
 
+    //延迟重试：每一级一个fanout交换机和一个带TTL的队列，到期后死信到默认交换机，按routingKey(原队列名)回到原队列
+    @Bean
+    public Declarables retryTiers(){
+        List<Declarable> declarables = new ArrayList<>();
+        if(RETRY_TIERS_ENABLED){
+            for (long delay : RETRY_DELAYS) {
+                String name = DelayedRetryRouter.tierName(RETRY_QUEUE_PREFIX, delay);
+                Map<String, Object> map = new HashMap<>();
+                map.put("x-message-ttl", delay);
+                map.put("x-dead-letter-exchange", "");
+                Queue queue = new Queue(name, true, false, false, map);
+                FanoutExchange exchange = new FanoutExchange(name);
+                declarables.add(queue);
+                declarables.add(exchange);
+                declarables.add(BindingBuilder.bind(queue).to(exchange));
+            }
+        }
+        return new Declarables(declarables);
+    }
+
     //死信队列参数设置
     @Bean
     public Queue queueDead(){
@@ -0,0 +1,270 @@
+package com.df.config;
+
+import com.df.codec.CodecMessageConverter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：发送端专用的连接池。按publisher.shards建立多条TCP连接，每条连接各自缓存channel，
+ * 和消费端的connectionFactory分开，发送量大时不会和消费者抢同一个socket和channel缓存。
+ * 发送时按未确认消息最少(least_outstanding)或者轮询(round_robin)选择一个分片，
+ * 每个分片的RabbitTemplate在创建时绑定confirm和return回调。
+ * 运行时调整channel缓存数时新建一组连接替换，旧连接不再被选中，等待确认的消息都收到confirm后再关闭
+ */
+@Component
+public class PublisherPool {
+
+    private static final Logger log = LoggerFactory.getLogger(PublisherPool.class);
+
+    //替换下来的连接至少保留的时间(ms)，已经选中旧分片正在发送的线程有时间完成
+    private static final long RETIRE_GRACE = 5000;
+
+    @Value("${spring.rabbitmq.host}")
+    private String host;
+    @Value("${spring.rabbitmq.port}")
+    private int port;
+    @Value("${spring.rabbitmq.username}")
+    private String username;
+    @Value("${spring.rabbitmq.password}")
+    private String password;
+    @Value("${spring.rabbitmq.virtual-host}")
+    private String virtualHost;
+
+    //发送连接数
+    @Value("${publisher.shards}")
+    private int SHARDS;
+    //每条连接缓存的channel数
+    @Value("${publisher.channel_cache_size}")
+    private int CHANNEL_CACHE_SIZE;
+    //获取channel的超时时间(ms)
+    @Value("${publisher.checkout_timeout}")
+    private long CHECKOUT_TIMEOUT;
+    //least_outstanding / round_robin
+    @Value("${publisher.selection}")
+    private String SELECTION;
+
+    @Autowired
+    CodecMessageConverter codecMessageConverter;
+
+    @Autowired
+    RabbitTemplate.ConfirmCallback confirmCallback;
+
+    @Autowired
+    RabbitTemplate.ReturnCallback returnCallBack;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    //连接被broker阻塞和解除时发布事件，发送限速据此收紧
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+
+    //替换时整体换成新的列表
+    private volatile List<Shard> shards;
+
+    //已经被替换，等待关闭的分片
+    private final List<Shard> retired = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService retirer;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private boolean leastOutstanding;
+
+    //当前生效的channel缓存数和获取超时
+    private volatile int channelCacheSize;
+    private volatile long checkoutTimeout;
+
+    @PostConstruct
+    public void init(){
+        leastOutstanding = !"round_robin".equals(SELECTION);
+        channelCacheSize = CHANNEL_CACHE_SIZE;
+        checkoutTimeout = CHECKOUT_TIMEOUT;
+        List<Shard> created = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, SHARDS); i++) {
+            int index = i;
+            created.add(createShard(index));
+            //替换后同一个编号读取新的分片
+            Gauge.builder("rabbit_publisher_outstanding", () -> shards.get(index).getOutstanding())
+                    .description("发送连接上等待confirm的消息数量").tag("shard", String.valueOf(index)).register(meterRegistry);
+        }
+        shards = created;
+    }
+
+    private Shard createShard(int index){
+        CachingConnectionFactory factory = new CachingConnectionFactory();
+        factory.setCacheMode(CachingConnectionFactory.CacheMode.CHANNEL);
+        factory.setChannelCacheSize(channelCacheSize);
+        factory.setChannelCheckoutTimeout(checkoutTimeout);
+        factory.setHost(host);
+        factory.setPort(port);
+        factory.setUsername(username);
+        factory.setPassword(password);
+        factory.setVirtualHost(virtualHost);
+        factory.setPublisherConfirms(true);
+        factory.setPublisherReturns(true);
+        factory.setConnectionNameStrategy(connectionFactory -> "publisher-" + index);
+        factory.setApplicationEventPublisher(applicationEventPublisher);
+
+        RabbitTemplate template = new RabbitTemplate(factory);
+        template.setMandatory(true);
+        template.setMessageConverter(codecMessageConverter);
+        template.setConfirmCallback(confirmCallback);
+        template.setReturnCallback(returnCallBack);
+        return new Shard(index, factory, template);
+    }
+
+    @PreDestroy
+    public void destroy(){
+        if(retirer != null){
+            retirer.shutdownNow();
+        }
+        for (Shard shard : shards) {
+            shard.factory.destroy();
+        }
+        for (Shard shard : retired) {
+            shard.factory.destroy();
+        }
+    }
+
+    public int getChannelCacheSize() {
+        return channelCacheSize;
+    }
+
+    public long getCheckoutTimeout() {
+        return checkoutTimeout;
+    }
+
+    //获取超时直接修改现有连接；channel缓存数只在建立连接时决定获取上限，需要新建一组连接替换
+    public synchronized void reconfigure(Integer cacheSize, Long timeout){
+        if(timeout != null && timeout != checkoutTimeout){
+            checkoutTimeout = timeout;
+            for (Shard shard : shards) {
+                shard.factory.setChannelCheckoutTimeout(timeout);
+            }
+        }
+        if(cacheSize == null || cacheSize == channelCacheSize){
+            return;
+        }
+        channelCacheSize = cacheSize;
+        List<Shard> old = shards;
+        List<Shard> created = new ArrayList<>();
+        for (Shard shard : old) {
+            created.add(createShard(shard.index));
+        }
+        shards = created;
+        long now = System.currentTimeMillis();
+        for (Shard shard : old) {
+            shard.retiredAt = now;
+            retired.add(shard);
+        }
+        if(retirer == null){
+            retirer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("publisher-retire", true));
+            retirer.scheduleWithFixedDelay(this::closeRetired, 1000, 1000, TimeUnit.MILLISECONDS);
+        }
+        log.info("发送连接channel缓存数调整为{}，旧连接等待确认完成后关闭", cacheSize);
+    }
+
+    //旧连接上的消息都收到confirm并且超过保留时间后关闭
+    private void closeRetired(){
+        long now = System.currentTimeMillis();
+        for (Shard shard : retired) {
+            if(shard.outstanding.get() == 0 && now - shard.retiredAt >= RETIRE_GRACE){
+                retired.remove(shard);
+                shard.factory.destroy();
+            }
+        }
+    }
+
+    public Shard select(){
+        List<Shard> shards = this.shards;
+        int size = shards.size();
+        //从轮询位置开始找，未确认数相同时依次分散到各个连接
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        if(!leastOutstanding || size == 1){
+            return shards.get(start);
+        }
+        Shard best = shards.get(start);
+        for (int i = 1; i < size; i++) {
+            Shard shard = shards.get((start + i) % size);
+            if(shard.outstanding.get() < best.outstanding.get()){
+                best = shard;
+            }
+        }
+        return best;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("selection", leastOutstanding ? "least_outstanding" : "round_robin");
+        stats.put("retired", retired.size());
+        for (Shard shard : shards) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("outstanding", shard.outstanding.get());
+            item.put("channelCacheSize", shard.factory.getChannelCacheSize());
+            stats.put("publisher-" + shard.index, item);
+        }
+        return stats;
+    }
+
+    public static final class Shard {
+
+        private final int index;
+
+        private final CachingConnectionFactory factory;
+
+        private final RabbitTemplate template;
+
+        //已经发出还没收到confirm的消息数
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        //被替换的时间，0为正在使用
+        private volatile long retiredAt;
+
+        private Shard(int index, CachingConnectionFactory factory, RabbitTemplate template){
+            this.index = index;
+            this.factory = factory;
+            this.template = template;
+        }
+
+        public RabbitTemplate getTemplate() {
+            return template;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        //消息发出后调用，confirm到达或者失败时减去
+        public void track(CorrelationData correlation){
+            outstanding.incrementAndGet();
+            correlation.getFuture().addCallback(confirm -> outstanding.decrementAndGet(),
+                    e -> outstanding.decrementAndGet());
+        }
+    }
+}
@@ -1,23 +1,30 @@
 package com.df.config;
 
-import com.df.controller.ProductController;
-import com.df.entity.User;
-import org.redisson.api.RBucket;
-import org.redisson.api.RMap;
+import com.df.codec.CodecMessageConverter;
+import com.df.entity.PublishCorrelation;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.df.outbox.MessageOutbox;
+import com.df.service.ConfirmTracker;
+import com.df.service.RetryScheduler;
+import com.df.service.ReturnedMessageReplayer;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMapAsync;
 import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConversionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,24 +36,31 @@ import java.util.concurrent.TimeUnit;
 @Component  //如果没有需要内部调用，可以使用@Component，不然需要使用@Configuration进行cglib动态代理 调用
 public class RabbitmqConfirm {
 
+    private static final Logger log = LoggerFactory.getLogger(RabbitmqConfirm.class);
+
     @Autowired
     RedissonClient redissonClient;
 
-    @Value("${redisson_operator.error_key}")
-    private String ERROR_IN_EXCHANGE;
-
     @Value("${redisson_operator.error_queue}")
     private String ERROR_IN_QUEUE;
 
-    //如果设置rabbitmq 则会导致confirmCallback()失效,因为初始化先后执行的顺序不同，rabbitTemplate 先生成，需要存入方法，不能自己引用自己。
     @Autowired
-    RabbitTemplate rabbitTemplate;
+    CodecMessageConverter codecMessageConverter;
 
-    @Value("${order.exchange_name}")
-    private String ORDER_EXCHANGE_NAME;
+    @Autowired
+    ConfirmTracker confirmTracker;
 
-    @Value("${order.routing_key_name}")
-    private String ORDER_ROUTING_KEY_NAME;
+    @Autowired
+    RetryScheduler retryScheduler;
+
+    @Autowired
+    MessageOutbox messageOutbox;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
 
     //消息发入交换机确认
     @Bean
@@ -54,35 +68,29 @@ public class RabbitmqConfirm {
         return new RabbitTemplate.ConfirmCallback() {
             @Override                           //消息唯一标识       //是否成功传入   //原因
             public void confirm(CorrelationData correlationData, boolean b, String s) {
-                System.out.println("是否成功传入exchange: " + b);
-                //获取交换机的成功情况
-                RBucket<Object> bucket = redissonClient.getBucket(ERROR_IN_EXCHANGE + "::" + correlationData.getId());
-
-                //提取User实体数据
-                User user = (User) convertToEntity(correlationData.getReturnedMessage().getBody());
+                String id = correlationData.getId();
+                String exchange = null;
+                if(correlationData instanceof PublishCorrelation){
+                    PublishCorrelation correlation = (PublishCorrelation) correlationData;
+                    exchange = correlation.getExchange();
+                    rabbitMetrics.confirmed(exchange, correlation.getPublishedAt(), b);
+                }
+                lifecycleJournal.record(id, b ? LifecycleEvent.CONFIRMED : LifecycleEvent.NACKED, exchange, 0);
                 if(b){
-                    System.out.println("成功传入交换机,消息id为: " + correlationData.getId());
-                    System.out.println("成功传入交换机,数据为: " + user);
-                    //删除key
-                    bucket.delete();
+                    log.debug("成功传入交换机,消息id为: {}", id);
+                    //本地移除，之前失败过的才会删除redis记录
+                    confirmTracker.confirmed(id);
+                    if(correlationData instanceof PublishCorrelation){
+                        messageOutbox.done((PublishCorrelation) correlationData);
+                    }
                 }else{
-                    System.out.println("传入交换机失败,失败原因: " + s);
-                    String times = (String) bucket.get();
-                    bucket.expire(10, TimeUnit.SECONDS);
-                    Integer numTimes = null;
-                    if(times == null || (numTimes = Integer.valueOf(times)) < 5){
-                        if(times == null){
-                            System.out.println("传入交换机失败次数: " + 1 + " 失败id: " + correlationData.getId());
-                            bucket.compareAndSet(null, 1);
-                        }else{
-                            System.out.println("传入交换机失败次数: " + (numTimes + 1) + "失败id: " + correlationData.getId());
-                            bucket.compareAndSet(numTimes, numTimes + 1);
-                        }
-                        rabbitTemplate.convertAndSend(ORDER_EXCHANGE_NAME, ORDER_ROUTING_KEY_NAME, user, correlationData);
+                    log.warn("传入交换机失败,消息id: {} 失败原因: {}", id, s);
+                    //交给重发调度按退避时间重发，不在confirm线程里直接发送
+                    if(correlationData instanceof PublishCorrelation){
+                        retryScheduler.retry((PublishCorrelation) correlationData);
                     }else{
-                        System.out.println("消息传入交换机失败,丢弃数据, id: " + correlationData.getId() +
-                                "数据: " + user);
-                        return;
+                        log.warn("消息缺少发送信息,无法重发, id: {}", id);
+                        confirmTracker.abandon(id);
                     }
                 }
             }
@@ -95,39 +103,31 @@ public class RabbitmqConfirm {
         return new RabbitTemplate.ReturnCallback() {
             @Override                       //消息体        响应code  响应错误内容   交换机        连接key
             public void returnedMessage(Message message, int i, String s, String s1, String s2) {
+                rabbitMetrics.returned(i);
                 //记录没有成功传入队列的数据，进行后续重传
-                User user = (User) convertToEntity(message.getBody());
-                System.out.println("队列发送失败");
-                System.out.println("没有入队的内容: " + user);
-                System.out.println("没有此route");
-                System.out.println("错误代码: " + i + " 错误内容: " + s);
-                System.out.println("传入交换机: " + s1);
-                System.out.println("连接的routeKey:" + s2);
                 String correlationId = (String) message.getMessageProperties().getHeaders().get("spring_returned_message_correlation");
-                RMap<Object, Object> map = redissonClient.getMap(ERROR_IN_QUEUE + "::" + correlationId);
-                map.put("exchange", s1);
-                map.put("routeKey", s2);
-                map.put("message", message);
-                map.put("errorDetail", s);
-                map.expire(2, TimeUnit.HOURS);
+                lifecycleJournal.record(correlationId, LifecycleEvent.RETURNED, s1, i);
+                log.warn("队列发送失败,没有此route, id: {} 错误代码: {} 错误内容: {} 传入交换机: {} 连接的routeKey: {}",
+                        correlationId, i, s, s1, s2);
+                //消息体按base64保存，退回消息重发任务可以原样重新发布；写入和过期放在一个批次里异步执行，不阻塞连接线程
+                Map<String, String> record = ReturnedMessageReplayer.toRecord(message, i, s, s1, s2);
+                RBatch batch = redissonClient.createBatch();
+                RMapAsync<String, String> map = batch.getMap(ERROR_IN_QUEUE + "::" + correlationId);
+                map.putAllAsync(record);
+                map.expireAsync(2, TimeUnit.HOURS);
+                batch.executeAsync();
             }
         };
     }
 
 
-    //将byte数组反序列化为实体
-    public Object convertToEntity(byte[] bytes){
-        ByteArrayInputStream byteArray = new ByteArrayInputStream(bytes);
-        Object result = null;
+    //按消息的content_type将消息体解码为实体
+    public Object convertToEntity(Message message){
         try {
-            ObjectInputStream ois = new ObjectInputStream(byteArray);
-            Object object = ois.readObject();
-            result = object;
-            ois.close();
-            byteArray.close();
-        } catch (IOException | ClassNotFoundException e) {
+            return codecMessageConverter.fromMessage(message);
+        } catch (MessageConversionException e) {
             e.printStackTrace();
+            return null;
         }
-        return result;
     }
 }
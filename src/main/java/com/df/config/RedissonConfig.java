@@ -4,8 +4,10 @@ import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.StringCodec;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 
 
 /**
@@ -17,10 +19,16 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RedissonConfig  {
 
+    @Value("${redisson.address}")
+    private String ADDRESS;
+    //没有密码时留空
+    @Value("${redisson.password}")
+    private String PASSWORD;
+
     @Bean
     public RedissonClient connectRedissonClient(){
         Config config = new Config();
-        config.useSingleServer().setAddress("redis://192.168.44.146:6379").setPassword("7419635");
+        config.useSingleServer().setAddress(ADDRESS).setPassword(StringUtils.hasText(PASSWORD) ? PASSWORD : null);
         config.setCodec(new StringCodec());
         config.setLockWatchdogTimeout(12000);
         RedissonClient redissonClient = Redisson.create(config);
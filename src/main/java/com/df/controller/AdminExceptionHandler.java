@@ -0,0 +1,34 @@
+package com.df.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：管理接口的参数不合法或者当前状态不允许调整时返回400和原因，不作为服务端错误。
+ * 只作用于下面几个调整接口，发送接口中的同类异常仍按服务端错误处理
+ */
+@RestControllerAdvice(assignableTypes = {TuningController.class, OrderShardController.class, ReturnedReplayController.class})
+public class AdminExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminExceptionHandler.class);
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> badRequest(RuntimeException e){
+        log.info("管理接口请求被拒绝: {}", e.getMessage());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", HttpStatus.BAD_REQUEST.value());
+        result.put("error", e.getMessage());
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.df.controller;
+
+import com.df.service.ConsumerAutoscaler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看订单队列消费者自动调整的状态
+ */
+@RestController
+public class AutoscaleController {
+
+    @Autowired
+    ConsumerAutoscaler consumerAutoscaler;
+
+    @GetMapping(value = "/autoscale/stats")
+    public Map<String, Object> stats(){
+        return consumerAutoscaler.stats();
+    }
+}
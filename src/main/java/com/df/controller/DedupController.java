@@ -0,0 +1,27 @@
+package com.df.controller;
+
+import com.df.service.IdempotencyCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看消费端去重缓存的命中情况
+ */
+@RestController
+public class DedupController {
+
+    @Autowired
+    IdempotencyCache idempotencyCache;
+
+    //命中、未命中、布隆过滤器直接排除、淘汰、共享层命中以及当前记录数
+    @GetMapping(value = "/dedup/stats")
+    public Map<String, Long> stats(){
+        return idempotencyCache.stats();
+    }
+}
@@ -0,0 +1,34 @@
+package com.df.controller;
+
+import com.df.journal.LifecycleJournal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：按消息id查询生命周期记录，以及查看最近的记录
+ */
+@RestController
+public class JournalController {
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @GetMapping(value = "/trace/{id}")
+    public List<Map<String, Object>> trace(@PathVariable String id){
+        return lifecycleJournal.timeline(id);
+    }
+
+    @GetMapping(value = "/trace/recent")
+    public List<Map<String, Object>> recent(@RequestParam(defaultValue = "100") int limit){
+        return lifecycleJournal.recent(limit);
+    }
+}
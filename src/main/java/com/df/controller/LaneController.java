@@ -0,0 +1,26 @@
+package com.df.controller;
+
+import com.df.service.ReceiveMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看各订单队列在异步消费工作线程上的排队和占用情况
+ */
+@RestController
+public class LaneController {
+
+    @Autowired
+    ReceiveMessage receiveMessage;
+
+    @GetMapping(value = "/lanes/stats")
+    public Map<String, Object> stats(){
+        return receiveMessage.laneStats();
+    }
+}
@@ -0,0 +1,38 @@
+package com.df.controller;
+
+import com.df.service.OrderShardManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看订单分片队列，调整分片数量，解除暂停的用户
+ */
+@RestController
+public class OrderShardController {
+
+    @Autowired
+    OrderShardManager orderShardManager;
+
+    @GetMapping(value = "/shards/stats")
+    public Map<String, Object> stats(){
+        return orderShardManager.stats();
+    }
+
+    @PostMapping(value = "/shards/rebalance")
+    public Map<String, Object> rebalance(@RequestParam int count){
+        return orderShardManager.rebalance(count);
+    }
+
+    @PostMapping(value = "/shards/release")
+    public Map<String, Object> release(@RequestParam String key){
+        return orderShardManager.release(key);
+    }
+}
@@ -1,21 +1,22 @@
 package com.df.controller;
 
+import com.df.entity.PublishResult;
 import com.df.entity.User;
-import org.springframework.amqp.core.Message;
-import org.springframework.amqp.core.MessageDeliveryMode;
-import org.springframework.amqp.core.MessageProperties;
-import org.springframework.amqp.rabbit.connection.CorrelationData;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import com.df.service.OrderShardRouter;
+import com.df.service.SendMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Controller;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.io.*;
-import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Lin
@@ -26,10 +27,6 @@ import java.util.concurrent.ThreadPoolExecutor;
 @RestController
 public class ProductController {
 
-    @Autowired
-    private RabbitTemplate rabbitTemplate;
-
-
     @Value("${order.exchange_name}")
     private String ORDER_EXCHANGE_NAME;
     @Value("${order.routing_key_name}")
@@ -40,50 +37,57 @@ public class ProductController {
     @Value("${order1.routing_key_name}")
     private String ORDER1_ROUTING_KEY_NAME;
 
+    //异步发送等待confirm的超时时间(ms)
+    @Value("${send_async.confirm_timeout}")
+    private long ASYNC_CONFIRM_TIMEOUT;
+    //窗口已满时返回给调用方的Retry-After(s)
+    @Value("${send_async.retry_after}")
+    private int RETRY_AFTER;
+
     @Autowired
-    RabbitTemplate.ConfirmCallback confirmCallback;
+    SendMessage sendMessage;
 
+    //开启分片时按用户id选择分片队列的routingKey
     @Autowired
-    RabbitTemplate.ReturnCallback returnCallBack;
+    OrderShardRouter orderShardRouter;
 
     @GetMapping(value = "/send")
     public String send(){
-        rabbitTemplate.setConfirmCallback(confirmCallback);
-        rabbitTemplate.setReturnCallback(returnCallBack);
         User user = new User(1L, "李姐", "888888@qq.com", "1737766562");
         //String message = "我要发送信息啦";
 
-            CorrelationData correlationData = getCorrelationData(user);
-            rabbitTemplate.convertAndSend(ORDER_EXCHANGE_NAME, ORDER_ROUTING_KEY_NAME, user, correlationData);
+            sendMessage.send(ORDER_EXCHANGE_NAME, orderShardRouter.routingKey(user.getId()), user);
 
 
 //        User user1 = new User(2L, "JY", "氢气请求群.com", "15892153");
-//        CorrelationData correlationData1 = getCorrelationData(user1);
-//        rabbitTemplate.convertAndSend(ORDER1_EXCHANGE, ORDER1_ROUTING_KEY_NAME, user1, correlationData1);
+//        sendMessage.send(ORDER1_EXCHANGE, ORDER1_ROUTING_KEY_NAME, user1);
         return "成功发送信息";
     }
 
-    private CorrelationData getCorrelationData(Object object){
-        CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
-        MessageProperties messageProperties = new MessageProperties();
-        messageProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
-        Message message = new Message(serializableEntity(object), new MessageProperties());
-        correlationData.setReturnedMessage(message);
-        return correlationData;
+    //异步发送，confirm到达后才返回结果，获取channel、写outbox和等待确认期间都不占用请求线程；
+    //等待确认的消息或者等待发布的消息达到上限时直接返回429，发送失败返回503
+    @PostMapping(value = "/sendAsync")
+    public DeferredResult<ResponseEntity<PublishResult>> sendAsync(@RequestBody User user){
+        DeferredResult<ResponseEntity<PublishResult>> result = new DeferredResult<>(ASYNC_CONFIRM_TIMEOUT,
+                ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new PublishResult(null, false, "等待确认超时")));
+        CompletableFuture<PublishResult> future = sendMessage.trySendAsync(ORDER_EXCHANGE_NAME,
+                orderShardRouter.routingKey(user.getId()), user);
+        if(future == null){
+            result.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER))
+                    .body(new PublishResult(null, false, "等待确认或发布的消息过多")));
+            return result;
+        }
+        future.thenAccept(publishResult -> result.setResult(publishResult.isAck()
+                ? ResponseEntity.ok(publishResult)
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(publishResult)));
+        return result;
     }
 
-    //序列化对象
-    private byte[] serializableEntity(Object object){
-        ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
-        try {
-            ObjectOutputStream ops = new ObjectOutputStream(byteArray);
-            ops.writeObject(object);
-            ops.close();
-            byteArray.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return byteArray.toByteArray();
+    //批量发送，同一个channel上流水线发布，返回每条消息的确认结果
+    @PostMapping(value = "/sendBatch")
+    public List<PublishResult> sendBatch(@RequestBody List<User> users){
+        return sendMessage.sendBatchAndWait(ORDER_EXCHANGE_NAME, users, user -> orderShardRouter.routingKey(user.getId()));
     }
 
 }
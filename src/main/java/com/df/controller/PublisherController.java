@@ -0,0 +1,26 @@
+package com.df.controller;
+
+import com.df.config.PublisherPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看各发送连接上等待确认的消息数量
+ */
+@RestController
+public class PublisherController {
+
+    @Autowired
+    PublisherPool publisherPool;
+
+    @GetMapping(value = "/publisher/stats")
+    public Map<String, Object> stats(){
+        return publisherPool.stats();
+    }
+}
@@ -0,0 +1,26 @@
+package com.df.controller;
+
+import com.df.service.PublishRateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看集群发送限速的当前速率、本地令牌和收紧原因
+ */
+@RestController
+public class RateLimitController {
+
+    @Autowired
+    PublishRateLimiter publishRateLimiter;
+
+    @GetMapping(value = "/ratelimit/stats")
+    public Map<String, Object> stats(){
+        return publishRateLimiter.stats();
+    }
+}
@@ -0,0 +1,41 @@
+package com.df.controller;
+
+import com.df.service.DeadLetterReplayer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：死信重放的管理接口
+ */
+@RestController
+public class ReplayController {
+
+    @Autowired
+    DeadLetterReplayer deadLetterReplayer;
+
+    //开始或继续重放，可以同时调整每秒重放的速率
+    @PostMapping(value = "/replay/start")
+    public Map<String, Object> start(@RequestParam(required = false) Double rate){
+        deadLetterReplayer.start(rate);
+        return deadLetterReplayer.report();
+    }
+
+    @PostMapping(value = "/replay/pause")
+    public Map<String, Object> pause(){
+        deadLetterReplayer.pause();
+        return deadLetterReplayer.report();
+    }
+
+    @GetMapping(value = "/replay/report")
+    public Map<String, Object> report(){
+        return deadLetterReplayer.report();
+    }
+}
@@ -0,0 +1,27 @@
+package com.df.controller;
+
+import com.df.service.RetryScheduler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：查看nack重发的统计
+ */
+@RestController
+public class RetryController {
+
+    @Autowired
+    RetryScheduler retryScheduler;
+
+    //已安排、已重发、已放弃、发送异常以及等待中的重发数量
+    @GetMapping(value = "/retry/stats")
+    public Map<String, Long> stats(){
+        return retryScheduler.stats();
+    }
+}
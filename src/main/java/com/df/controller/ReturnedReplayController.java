@@ -0,0 +1,45 @@
+package com.df.controller;
+
+import com.df.service.ReturnedMessageReplayer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：退回消息批量重发的管理接口
+ */
+@RestController
+public class ReturnedReplayController {
+
+    @Autowired
+    ReturnedMessageReplayer returnedMessageReplayer;
+
+    //开始一次重发，rules例如 directExchange:wrongKey=directKey1,*=directKey2
+    @PostMapping(value = "/returned/replay/start")
+    public Map<String, Object> start(@RequestParam(required = false) String rules,
+                                     @RequestParam(required = false) Double rate){
+        boolean started = returnedMessageReplayer.start(rules, rate);
+        Map<String, Object> report = returnedMessageReplayer.report();
+        //已经有任务在运行时不会重新开始
+        report.put("started", started);
+        return report;
+    }
+
+    @PostMapping(value = "/returned/replay/stop")
+    public Map<String, Object> stop(){
+        returnedMessageReplayer.stop();
+        return returnedMessageReplayer.report();
+    }
+
+    @GetMapping(value = "/returned/replay/report")
+    public Map<String, Object> report(){
+        return returnedMessageReplayer.report();
+    }
+}
@@ -0,0 +1,56 @@
+package com.df.controller;
+
+import com.df.service.RuntimeTuner;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：运行时调整消费容器和连接的设置，查看调整记录和调整前后的吞吐
+ */
+@RestController
+public class TuningController {
+
+    @Autowired
+    RuntimeTuner runtimeTuner;
+
+    @GetMapping(value = "/admin/tuning")
+    public Map<String, Object> settings(){
+        return runtimeTuner.settings();
+    }
+
+    @GetMapping(value = "/admin/tuning/history")
+    public List<Map<String, Object>> history(){
+        return runtimeTuner.history();
+    }
+
+    //container为容器的bean名称 messageContainer / order1Container / DeadMessageContainer，开启订单分片时orderShards调整所有分片的prefetch
+    @PostMapping(value = "/admin/tuning/container")
+    public Map<String, Object> tuneContainer(@RequestParam String container,
+                                             @RequestParam(required = false) Integer consumers,
+                                             @RequestParam(required = false) Integer maxConsumers,
+                                             @RequestParam(required = false) Integer prefetch){
+        return runtimeTuner.tuneContainer(container, consumers, maxConsumers, prefetch);
+    }
+
+    @PostMapping(value = "/admin/tuning/batch")
+    public Map<String, Object> tuneBatchSize(@RequestParam int size){
+        return runtimeTuner.tuneBatchSize(size);
+    }
+
+    //target为consumer或者publisher
+    @PostMapping(value = "/admin/tuning/connection")
+    public Map<String, Object> tuneConnection(@RequestParam String target,
+                                              @RequestParam(required = false) Integer channelCacheSize,
+                                              @RequestParam(required = false) Long checkoutTimeout){
+        return runtimeTuner.tuneConnection(target, channelCacheSize, checkoutTimeout);
+    }
+}
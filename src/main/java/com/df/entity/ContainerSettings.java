@@ -0,0 +1,34 @@
+package com.df.entity;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：监听容器当前生效的消费者数量、最大消费者数量和prefetch。容器没有公开的读取方法，创建和调整时由设置的一方记录
+ */
+public class ContainerSettings {
+
+    private final int consumers;
+
+    private final int maxConsumers;
+
+    private final int prefetch;
+
+    public ContainerSettings(int consumers, int maxConsumers, int prefetch) {
+        this.consumers = consumers;
+        this.maxConsumers = maxConsumers;
+        this.prefetch = prefetch;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+}
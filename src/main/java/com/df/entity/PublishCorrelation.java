@@ -0,0 +1,52 @@
+package com.df.entity;
+
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：发送时的关联数据，额外记录发往的交换机和routingKey，重发时原样使用
+ */
+public class PublishCorrelation extends CorrelationData {
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    //在outbox中的位置，段序号<<32 | 段内偏移，-1表示没有写入
+    private volatile long outboxPosition = -1;
+
+    //最近一次发送时的System.nanoTime()，用于统计到confirm的耗时
+    private volatile long publishedAt;
+
+    public PublishCorrelation(String id, String exchange, String routingKey) {
+        super(id);
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public long getOutboxPosition() {
+        return outboxPosition;
+    }
+
+    public void setOutboxPosition(long outboxPosition) {
+        this.outboxPosition = outboxPosition;
+    }
+
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    public void setPublishedAt(long publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+}
@@ -0,0 +1,57 @@
+package com.df.entity;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：批量发送时单条消息的确认结果
+ */
+public class PublishResult {
+    //消息唯一标识 (correlationId)
+    private String id;
+    //broker是否ack
+    private boolean ack;
+    //nack或超时的原因
+    private String cause;
+
+    public PublishResult(){}
+
+    public PublishResult(String id, boolean ack, String cause) {
+        this.id = id;
+        this.ack = ack;
+        this.cause = cause;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public boolean isAck() {
+        return ack;
+    }
+
+    public void setAck(boolean ack) {
+        this.ack = ack;
+    }
+
+    public String getCause() {
+        return cause;
+    }
+
+    public void setCause(String cause) {
+        this.cause = cause;
+    }
+
+    @Override
+    public String toString() {
+        return "PublishResult{" +
+                "id='" + id + '\'' +
+                ", ack=" + ack +
+                ", cause='" + cause + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package com.df.journal;
+
+import com.df.service.DeduplicatingMessageListener;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：放在容器监听的最外层，每条投递进来的消息先记录一条生命周期事件再交给后面的监听
+ */
+public class JournalingMessageListener implements ChannelAwareMessageListener {
+
+    private final ChannelAwareMessageListener delegate;
+
+    private final LifecycleJournal journal;
+
+    private final LifecycleEvent event;
+
+    public JournalingMessageListener(ChannelAwareMessageListener delegate, LifecycleJournal journal, LifecycleEvent event){
+        this.delegate = delegate;
+        this.journal = journal;
+        this.event = event;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        MessageProperties properties = message.getMessageProperties();
+        journal.record(DeduplicatingMessageListener.correlationId(message), event,
+                properties.getConsumerQueue(), properties.getDeliveryTag());
+        delegate.onMessage(message, channel);
+    }
+}
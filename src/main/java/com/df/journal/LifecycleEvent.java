@@ -0,0 +1,35 @@
+package com.df.journal;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息生命周期中记录的事件，detail的含义随事件不同
+ */
+public enum LifecycleEvent {
+
+    //发送到交换机，detail为0首次发送，1重发
+    PUBLISHED,
+    //broker确认
+    CONFIRMED,
+    //broker拒绝
+    NACKED,
+    //没有路由到队列被退回，detail为reply code
+    RETURNED,
+    //投递给消费者，detail为deliveryTag
+    DELIVERED,
+    //消费端签收，detail为deliveryTag
+    ACKED,
+    //消费端拒绝，detail为1重新入队，0进入死信队列
+    REJECTED,
+    //从死信队列投递出来，detail为deliveryTag
+    DEAD_LETTERED,
+    //消费失败后转入延迟重试队列，detail为延迟(ms)
+    DELAYED;
+
+    private static final LifecycleEvent[] VALUES = values();
+
+    static LifecycleEvent of(int ordinal){
+        return VALUES[ordinal];
+    }
+}
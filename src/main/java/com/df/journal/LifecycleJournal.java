@@ -0,0 +1,162 @@
+package com.df.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息生命周期日志。固定大小的环形缓冲，所有槽位启动时分配，写入时只占用一个序号并填写槽位，
+ * 不加锁也不创建对象，写满后覆盖最旧的记录。
+ * 每个槽位带一个序号，写入前置为-1，写完后设为本次序号；读取前后序号一致才认为记录完整，
+ * 读到正在写入或者已经被覆盖的槽位直接跳过。关闭时把最近的记录输出到日志
+ */
+@Component
+public class LifecycleJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(LifecycleJournal.class);
+
+    @Value("${journal.enabled}")
+    private boolean ENABLED;
+    //槽位数量，向上取2的幂
+    @Value("${journal.capacity}")
+    private int CAPACITY;
+    //关闭时输出的最近记录数
+    @Value("${journal.dump_size}")
+    private int DUMP_SIZE;
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    private int mask;
+
+    private AtomicLongArray sequences;
+
+    private AtomicLongArray times;
+
+    private AtomicIntegerArray events;
+
+    private AtomicLongArray details;
+
+    private AtomicReferenceArray<String> ids;
+
+    //发送端为exchange，消费端为队列名，都是已有字符串的引用
+    private AtomicReferenceArray<String> sources;
+
+    @PostConstruct
+    public void init(){
+        int capacity = Integer.highestOneBit(Math.max(2, CAPACITY) - 1) << 1;
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, -1);
+        }
+        times = new AtomicLongArray(capacity);
+        events = new AtomicIntegerArray(capacity);
+        details = new AtomicLongArray(capacity);
+        ids = new AtomicReferenceArray<>(capacity);
+        sources = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void record(String id, LifecycleEvent event, String source, long detail){
+        if(!ENABLED || id == null){
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        sequences.set(slot, -1);
+        times.lazySet(slot, System.currentTimeMillis());
+        events.lazySet(slot, event.ordinal());
+        details.lazySet(slot, detail);
+        ids.lazySet(slot, id);
+        sources.lazySet(slot, source);
+        sequences.lazySet(slot, sequence);
+    }
+
+    //某条消息仍在缓冲中的所有记录，按写入顺序排列
+    public List<Map<String, Object>> timeline(String id){
+        List<Map<String, Object>> timeline = new ArrayList<>();
+        if(!ENABLED){
+            return timeline;
+        }
+        long end = cursor.get();
+        long start = Math.max(0, end - mask - 1);
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            if(id.equals(ids.get(slot))){
+                Map<String, Object> entry = read(sequence);
+                if(entry != null && id.equals(entry.get("id"))){
+                    timeline.add(entry);
+                }
+            }
+        }
+        return timeline;
+    }
+
+    //最近的limit条记录
+    public List<Map<String, Object>> recent(int limit){
+        List<Map<String, Object>> recent = new ArrayList<>();
+        if(!ENABLED){
+            return recent;
+        }
+        long end = cursor.get();
+        long start = Math.max(0, end - Math.min(limit, mask + 1));
+        for (long sequence = start; sequence < end; sequence++) {
+            Map<String, Object> entry = read(sequence);
+            if(entry != null){
+                recent.add(entry);
+            }
+        }
+        return recent;
+    }
+
+    //读取指定序号的记录，正在写入或者已经被覆盖时返回null
+    private Map<String, Object> read(long sequence){
+        int slot = (int) (sequence & mask);
+        if(sequences.get(slot) != sequence){
+            return null;
+        }
+        long time = times.get(slot);
+        int event = events.get(slot);
+        long detail = details.get(slot);
+        String id = ids.get(slot);
+        String source = sources.get(slot);
+        if(sequences.get(slot) != sequence){
+            return null;
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("sequence", sequence);
+        entry.put("time", time);
+        entry.put("id", id);
+        entry.put("event", LifecycleEvent.of(event).name());
+        entry.put("source", source);
+        entry.put("detail", detail);
+        return entry;
+    }
+
+    @PreDestroy
+    public void dump(){
+        if(!ENABLED || DUMP_SIZE <= 0){
+            return;
+        }
+        List<Map<String, Object>> recent = recent(DUMP_SIZE);
+        log.info("关闭前最近的消息生命周期记录: {}", recent.size());
+        for (Map<String, Object> entry : recent) {
+            log.info("{} {} {} {} {} {}", entry.get("sequence"), entry.get("time"), entry.get("id"),
+                    entry.get("event"), entry.get("source"), entry.get("detail"));
+        }
+    }
+}
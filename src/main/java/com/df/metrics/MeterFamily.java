@@ -0,0 +1,39 @@
+package com.df.metrics;
+
+import io.micrometer.core.instrument.Meter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：同名、按一个标签区分的一组指标，例如按交换机区分的确认耗时。
+ * 第一次用到某个标签值时注册到MeterRegistry，之后查找时不再创建builder和标签对象
+ */
+public class MeterFamily<M extends Meter> {
+
+    private final Function<String, M> factory;
+    private final Map<String, M> meters = new ConcurrentHashMap<>();
+
+    MeterFamily(Function<String, M> factory){
+        this.factory = factory;
+    }
+
+    public M get(String tagValue){
+        if(tagValue == null){
+            tagValue = "none";
+        }
+        M meter = meters.get(tagValue);
+        if(meter == null){
+            meter = meters.computeIfAbsent(tagValue, factory);
+        }
+        return meter;
+    }
+
+    public Map<String, M> getMeters() {
+        return meters;
+    }
+}
@@ -0,0 +1,212 @@
+package com.df.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：发送、确认、退回、重发以及消费链路上的指标，注册到Micrometer，由/actuator/prometheus拉取。
+ * 耗时统计使用固定的桶边界，自动调整和运行时调参按两次读取的桶数量之差估算一段时间内的分位数
+ */
+@Component
+public class RabbitMetrics {
+
+    //耗时统计的桶上边界(ns)，100us ~ 10s
+    private static final long[] BOUNDS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private MeterFamily<Timer> confirmLatency;
+    private Counter confirmAck;
+    private Counter confirmNack;
+    private MeterFamily<Counter> returned;
+    //按响应码缓存，退回时不做字符串转换
+    private final AtomicReferenceArray<Counter> returnedByCode = new AtomicReferenceArray<>(1000);
+    private Counter retryScheduled;
+    private Counter retrySent;
+    private Counter retryAbandoned;
+    private Counter retrySendFailed;
+    private Timer channelCheckout;
+    private Counter channelCheckoutTimeout;
+    private Counter sendThrottled;
+    private MeterFamily<Timer> consumerProcessing;
+    private MeterFamily<Counter> consumerAck;
+    private MeterFamily<Counter> consumerRequeue;
+    private MeterFamily<Counter> consumerReject;
+    private MeterFamily<Counter> consumerDelayed;
+    private MeterFamily<Counter> publishLimited;
+
+    @PostConstruct
+    public void init(){
+        confirmLatency = timerFamily("rabbit_publish_confirm", "发送到收到confirm的耗时", "exchange");
+        MeterFamily<Counter> confirms = counterFamily("rabbit_confirm", "收到的confirm数量", "result");
+        confirmAck = confirms.get("ack");
+        confirmNack = confirms.get("nack");
+        returned = counterFamily("rabbit_returned", "没有路由到队列被退回的消息数量", "reply_code");
+        MeterFamily<Counter> retry = counterFamily("rabbit_retry", "nack消息的重发", "result");
+        retryScheduled = retry.get("scheduled");
+        retrySent = retry.get("sent");
+        retryAbandoned = retry.get("abandoned");
+        retrySendFailed = retry.get("send_failed");
+        channelCheckout = timer("rabbit_channel_checkout", "发送时从缓存获取channel的等待时间").register(meterRegistry);
+        channelCheckoutTimeout = Counter.builder("rabbit_channel_checkout_timeout")
+                .description("获取channel超过checkout timeout的次数").register(meterRegistry);
+        sendThrottled = Counter.builder("rabbit_send_throttled")
+                .description("异步发送窗口已满被拒绝的请求数量").register(meterRegistry);
+        consumerProcessing = timerFamily("rabbit_consumer_processing", "消费端处理一条消息的耗时", "queue");
+        consumerAck = counterFamily("rabbit_consumer_ack", "消费端签收的消息数量", "queue");
+        consumerRequeue = counterFamily("rabbit_consumer_requeue", "消费端拒绝并重新入队的消息数量", "queue");
+        consumerReject = counterFamily("rabbit_consumer_reject", "消费端拒绝进入死信队列的消息数量", "queue");
+        consumerDelayed = counterFamily("rabbit_consumer_delayed", "消费失败转入延迟重试队列的消息数量", "queue");
+        publishLimited = counterFamily("rabbit_publish_limited", "超过集群发送限速没有发出的消息数量", "exchange");
+    }
+
+    private MeterFamily<Counter> counterFamily(String name, String help, String tagKey){
+        return new MeterFamily<>(tagValue -> Counter.builder(name).description(help).tag(tagKey, tagValue).register(meterRegistry));
+    }
+
+    private MeterFamily<Timer> timerFamily(String name, String help, String tagKey){
+        return new MeterFamily<>(tagValue -> timer(name, help).tag(tagKey, tagValue).register(meterRegistry));
+    }
+
+    private static Timer.Builder timer(String name, String help){
+        Duration[] slas = new Duration[BOUNDS.length];
+        for (int i = 0; i < BOUNDS.length; i++) {
+            slas[i] = Duration.ofNanos(BOUNDS[i]);
+        }
+        return Timer.builder(name).description(help).sla(slas);
+    }
+
+    //publishedAt为发送时的System.nanoTime()，0表示没有记录
+    public void confirmed(String exchange, long publishedAt, boolean ack){
+        (ack ? confirmAck : confirmNack).increment();
+        if(publishedAt != 0){
+            confirmLatency.get(exchange).record(System.nanoTime() - publishedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public MeterFamily<Timer> confirmLatency(){
+        return confirmLatency;
+    }
+
+    public void returned(int replyCode){
+        if(replyCode < 0 || replyCode >= returnedByCode.length()){
+            returned.get(String.valueOf(replyCode)).increment();
+            return;
+        }
+        Counter counter = returnedByCode.get(replyCode);
+        if(counter == null){
+            counter = returned.get(String.valueOf(replyCode));
+            returnedByCode.set(replyCode, counter);
+        }
+        counter.increment();
+    }
+
+    //所有响应码退回的消息总数
+    public long returnedCount(){
+        double total = 0;
+        for (Counter counter : returned.getMeters().values()) {
+            total += counter.count();
+        }
+        return (long) total;
+    }
+
+    public Counter retryScheduled(){
+        return retryScheduled;
+    }
+
+    public Counter retrySent(){
+        return retrySent;
+    }
+
+    public Counter retryAbandoned(){
+        return retryAbandoned;
+    }
+
+    public Counter retrySendFailed(){
+        return retrySendFailed;
+    }
+
+    public void channelCheckout(long nanos){
+        channelCheckout.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void channelCheckoutTimeout(){
+        channelCheckoutTimeout.increment();
+    }
+
+    public void sendThrottled(){
+        sendThrottled.increment();
+    }
+
+    public void consumed(String queue, long nanos){
+        consumerProcessing.get(queue).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public MeterFamily<Timer> consumerProcessing(){
+        return consumerProcessing;
+    }
+
+    public void acked(String queue){
+        consumerAck.get(queue).increment();
+    }
+
+    public void rejected(String queue, boolean requeue){
+        (requeue ? consumerRequeue : consumerReject).get(queue).increment();
+    }
+
+    public void delayed(String queue){
+        consumerDelayed.get(queue).increment();
+    }
+
+    public void publishLimited(String exchange){
+        publishLimited.get(exchange).increment();
+    }
+
+    //各个桶上边界以内的累计数量，最后一个为总数，两次读取相减得到一段时间内的分布。
+    //Prometheus注册表的桶是从启动开始的累计值
+    public static long[] bucketCounts(Timer timer){
+        long[] counts = new long[BOUNDS.length + 1];
+        CountAtBucket[] buckets = timer.takeSnapshot().histogramCounts();
+        for (int i = 0, j = 0; i < BOUNDS.length && j < buckets.length; j++) {
+            if(buckets[j].bucket() == BOUNDS[i]){
+                counts[i++] = (long) buckets[j].count();
+            }
+        }
+        counts[BOUNDS.length] = timer.count();
+        return counts;
+    }
+
+    //按bucketCounts的差估算分位数，返回所在桶的上边界(ns)，超过最后一个边界时返回10s
+    public static long percentile(long[] counts, double quantile){
+        long total = counts[BOUNDS.length];
+        if(total <= 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if(counts[i] >= rank){
+                return BOUNDS[i];
+            }
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+}
@@ -0,0 +1,236 @@
+package com.df.outbox;
+
+import com.df.entity.PublishCorrelation;
+import com.df.codec.JsonMessageCodec;
+import com.df.service.SendMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：本地预写outbox。消息发送前追加到内存映射的段文件，confirm到达后标记完成，
+ * 段写满且全部完成后删除。启动时把上次没有确认的消息批量重新发送，保证至少一次投递。
+ * 旧段里的记录重新写入新段后才标记完成，没有发出去的留在旧段里，下次启动再重发
+ */
+@Component
+public class MessageOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageOutbox.class);
+
+    private static final String PREFIX = "outbox-";
+    private static final String SUFFIX = ".seg";
+
+    @Autowired
+    SendMessage sendMessage;
+
+    @Value("${outbox.enabled}")
+    private boolean ENABLED;
+
+    @Value("${outbox.dir}")
+    private String DIR;
+
+    //每个段文件的大小(byte)
+    @Value("${outbox.segment_size}")
+    private int SEGMENT_SIZE;
+
+    private File directory;
+
+    //段序号 -> 段，只包含本次启动后写入的段
+    private final ConcurrentHashMap<Integer, OutboxSegment> segments = new ConcurrentHashMap<>();
+
+    //上次运行留下的段 -> 段里未完成的记录，记录全部重新写入新段后删除段文件
+    private final Map<OutboxSegment, List<OutboxRecord>> recovered = new LinkedHashMap<>();
+
+    private OutboxSegment active;
+
+    private int nextIndex;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if(!ENABLED){
+            return;
+        }
+        directory = new File(DIR);
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("无法创建outbox目录: " + directory.getAbsolutePath());
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if(files != null){
+            Arrays.sort(files, Comparator.comparingInt(MessageOutbox::indexOf));
+            for (File file : files) {
+                OutboxSegment segment = OutboxSegment.open(indexOf(file), file);
+                List<OutboxRecord> pending = segment.readPending();
+                nextIndex = Math.max(nextIndex, segment.getIndex() + 1);
+                if(segment.isComplete()){
+                    //上次全部完成但没来得及删除
+                    file.delete();
+                }else{
+                    recovered.put(segment, pending);
+                }
+            }
+        }
+        active = newSegment();
+    }
+
+    //发送前写入，记录位置用于之后标记
+    public synchronized void append(PublishCorrelation correlation){
+        if(!ENABLED){
+            return;
+        }
+        Message message = correlation.getReturnedMessage();
+        MessageProperties properties = message.getMessageProperties();
+        Object typeId = properties.getHeaders().get(JsonMessageCodec.TYPE_ID_HEADER);
+        OutboxRecord record = new OutboxRecord(correlation.getId(), correlation.getExchange(), correlation.getRoutingKey(),
+                properties.getContentType(), message.getBody(), properties.getContentEncoding(),
+                typeId == null ? null : typeId.toString());
+        int offset = active.append(record);
+        if(offset < 0){
+            roll();
+            offset = active.append(record);
+            if(offset < 0){
+                throw new IllegalArgumentException("消息超过outbox段大小, id: " + correlation.getId());
+            }
+        }
+        correlation.setOutboxPosition(((long) active.getIndex() << 32) | offset);
+    }
+
+    //confirm到达或者放弃重发时标记完成
+    public void done(PublishCorrelation correlation){
+        long position = correlation.getOutboxPosition();
+        if(position < 0){
+            return;
+        }
+        OutboxSegment segment = segments.get((int) (position >>> 32));
+        if(segment != null && segment.markDone((int) position)){
+            delete(segment);
+        }
+    }
+
+    //启动完成后按段批量重发上次没有确认的消息，broker不可用时不影响启动，没有重发的消息留到下次启动
+    @EventListener(ApplicationReadyEvent.class)
+    public void replay(){
+        if(!ENABLED || recovered.isEmpty()){
+            return;
+        }
+        int total = 0;
+        for (List<OutboxRecord> records : recovered.values()) {
+            total += records.size();
+        }
+        log.info("outbox重发未确认消息: {}", total);
+        try {
+            for (Map.Entry<OutboxSegment, List<OutboxRecord>> entry : recovered.entrySet()) {
+                replay(entry.getKey(), entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            log.error("outbox重发失败，没有重发的消息保留到下次启动", e);
+        }
+        recovered.clear();
+    }
+
+    private void replay(OutboxSegment segment, List<OutboxRecord> records){
+        List<PublishCorrelation> correlations = new ArrayList<>(records.size());
+        for (OutboxRecord record : records) {
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(record.getContentType());
+            properties.setContentEncoding(record.getContentEncoding());
+            if(record.getTypeId() != null){
+                properties.setHeader(JsonMessageCodec.TYPE_ID_HEADER, record.getTypeId());
+            }
+            PublishCorrelation correlation = new PublishCorrelation(record.getId(), record.getExchange(), record.getRoutingKey());
+            correlation.setReturnedMessage(new Message(record.getBody(), properties));
+            correlations.add(correlation);
+        }
+        sendMessage.republish(correlations);
+        int kept = 0;
+        for (int i = 0; i < correlations.size(); i++) {
+            //已经写入新段的由新段跟踪确认；限速、窗口满、拿不到channel或发送异常的仍由旧段保留
+            if(isReappended(correlations.get(i))){
+                segment.markDone(records.get(i).getOffset());
+            }else{
+                kept++;
+            }
+        }
+        if(segment.isComplete()){
+            segment.getFile().delete();
+        }else{
+            //完成标记刷到磁盘，下次启动只重发剩下的
+            segment.force();
+            log.warn("outbox段{}还有{}条消息没有重发，保留到下次启动", segment.getIndex(), kept);
+        }
+    }
+
+    //发送前写入了新段，并且没有因为发送异常被放弃
+    private static boolean isReappended(PublishCorrelation correlation){
+        if(correlation.getOutboxPosition() < 0){
+            return false;
+        }
+        SettableListenableFuture<CorrelationData.Confirm> future = correlation.getFuture();
+        if(!future.isDone()){
+            return true;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void roll(){
+        OutboxSegment full = active;
+        full.seal();
+        active = newSegment();
+        if(full.isComplete()){
+            delete(full);
+        }
+    }
+
+    private OutboxSegment newSegment(){
+        int index = nextIndex++;
+        try {
+            OutboxSegment segment = OutboxSegment.create(index, new File(directory, PREFIX + index + SUFFIX), SEGMENT_SIZE);
+            segments.put(index, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void delete(OutboxSegment segment){
+        if(segments.remove(segment.getIndex(), segment)){
+            segment.getFile().delete();
+        }
+    }
+
+    private static int indexOf(File file){
+        String name = file.getName();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.df.outbox;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：outbox中的一条待确认消息
+ */
+public class OutboxRecord {
+
+    private final String id;
+    private final String exchange;
+    private final String routingKey;
+    private final String contentType;
+    private final byte[] body;
+    //压缩方式，没有压缩时为null
+    private final String contentEncoding;
+    //JSON编码的__TypeId__ header，其他编码为null
+    private final String typeId;
+    //从段文件读出时在段内的偏移，新写入的记录为-1
+    private final int offset;
+
+    public OutboxRecord(String id, String exchange, String routingKey, String contentType, byte[] body,
+                        String contentEncoding, String typeId) {
+        this(id, exchange, routingKey, contentType, body, contentEncoding, typeId, -1);
+    }
+
+    OutboxRecord(String id, String exchange, String routingKey, String contentType, byte[] body,
+                 String contentEncoding, String typeId, int offset) {
+        this.id = id;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.contentType = contentType;
+        this.body = body;
+        this.contentEncoding = contentEncoding;
+        this.typeId = typeId;
+        this.offset = offset;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+}
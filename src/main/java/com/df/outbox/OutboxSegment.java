@@ -0,0 +1,174 @@
+package com.df.outbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：outbox的一个内存映射段文件。记录格式：
+ * length(4) | status(1) | id | exchange | routingKey | contentType | body | contentEncoding | typeId
+ * 字符串为 长度(2)+UTF-8，body为 长度(4)+内容。length最后写入，为0表示后面没有数据。
+ * contentEncoding和typeId是后来加在末尾的，旧记录读到length结束时按null处理
+ */
+public class OutboxSegment {
+
+    static final byte PENDING = 0;
+    static final byte DONE = 1;
+
+    private static final int HEADER = 5;
+
+    private final int index;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    //append使用的视图，只在append的锁内使用
+    private final ByteBuffer writer;
+
+    //只在append的锁内修改
+    private int writePosition;
+    private volatile boolean sealed;
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+
+    private OutboxSegment(int index, File file, MappedByteBuffer buffer){
+        this.index = index;
+        this.file = file;
+        this.buffer = buffer;
+        this.writer = buffer.duplicate();
+    }
+
+    static OutboxSegment create(int index, File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            return new OutboxSegment(index, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    static OutboxSegment open(int index, File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            OutboxSegment segment = new OutboxSegment(index, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.sealed = true;
+            return segment;
+        }
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    //写入一条记录，空间不足返回-1
+    int append(OutboxRecord record){
+        byte[] id = bytes(record.getId());
+        byte[] exchange = bytes(record.getExchange());
+        byte[] routingKey = bytes(record.getRoutingKey());
+        byte[] contentType = bytes(record.getContentType());
+        byte[] body = record.getBody();
+        byte[] contentEncoding = bytes(record.getContentEncoding());
+        byte[] typeId = bytes(record.getTypeId());
+        int length = 2 + id.length + 2 + exchange.length + 2 + routingKey.length
+                + 2 + contentType.length + 4 + body.length + 2 + contentEncoding.length + 2 + typeId.length;
+        int offset = writePosition;
+        //多留4个字节给下一条记录的length结束标记
+        if(offset + HEADER + length + 4 > buffer.capacity()){
+            return -1;
+        }
+        buffer.put(offset + 4, PENDING);
+        writer.position(offset + HEADER);
+        putString(id);
+        putString(exchange);
+        putString(routingKey);
+        putString(contentType);
+        writer.putInt(body.length).put(body);
+        //放在消息体之后，旧格式的记录到这里已经结束
+        putString(contentEncoding);
+        putString(typeId);
+        //length最后写入，崩溃时只写了一半的记录不会被读到
+        buffer.putInt(offset, length);
+        writePosition = offset + HEADER + length;
+        written.incrementAndGet();
+        return offset;
+    }
+
+    //标记一条记录已确认或已放弃，返回该段是否已经全部完成。confirm线程和重发线程可能同时标记同一条，检查和写入在锁内完成
+    synchronized boolean markDone(int offset){
+        if(buffer.get(offset + 4) == DONE){
+            return isComplete();
+        }
+        buffer.put(offset + 4, DONE);
+        done.incrementAndGet();
+        return isComplete();
+    }
+
+    void seal(){
+        sealed = true;
+    }
+
+    boolean isComplete(){
+        return sealed && done.get() >= written.get();
+    }
+
+    //读取所有未完成的记录，同时统计已写入和已完成的数量
+    List<OutboxRecord> readPending(){
+        List<OutboxRecord> pending = new ArrayList<>();
+        ByteBuffer reader = buffer.duplicate();
+        int offset = 0;
+        while (offset + HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if(length <= 0 || offset + HEADER + length > buffer.capacity()){
+                break;
+            }
+            written.incrementAndGet();
+            if(buffer.get(offset + 4) == DONE){
+                done.incrementAndGet();
+            }else{
+                reader.position(offset + HEADER);
+                String id = getString(reader);
+                String exchange = getString(reader);
+                String routingKey = getString(reader);
+                String contentType = getString(reader);
+                byte[] body = new byte[reader.getInt()];
+                reader.get(body);
+                int end = offset + HEADER + length;
+                String contentEncoding = reader.position() < end ? getString(reader) : "";
+                String typeId = reader.position() < end ? getString(reader) : "";
+                pending.add(new OutboxRecord(id, exchange, routingKey, contentType, body,
+                        contentEncoding.isEmpty() ? null : contentEncoding, typeId.isEmpty() ? null : typeId, offset));
+            }
+            offset += HEADER + length;
+        }
+        writePosition = offset;
+        return pending;
+    }
+
+    void force(){
+        buffer.force();
+    }
+
+    private void putString(byte[] bytes){
+        writer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer reader){
+        byte[] bytes = new byte[reader.getShort() & 0xFFFF];
+        reader.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value){
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,197 @@
+package com.df.service;
+
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：异步消费。消费者线程只负责把消息交给工作线程池，每个channel同时处理的消息数不超过maxInFlight，
+ * 达到上限后消费者线程等待，由prefetch把剩下的消息挡在broker。
+ * 签收按投递顺序进行：从最早一条未签收的消息开始，连续处理完成的消息合并成一次basicAck(tag, true)；
+ * 处理失败的消息由FailureDecider决定去向：转入延迟重试队列的按处理完成签收，其余立即单独拒绝，重新入队或者进入死信队列。需要MANUAL签收，处理逻辑需要幂等
+ */
+public class AsyncMessageListener implements ChannelAwareMessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncMessageListener.class);
+
+    //单条消息的处理逻辑
+    public interface MessageHandler {
+        void handle(Message message) throws Exception;
+    }
+
+    private final MessageHandler handler;
+
+    private final BatchMessageListener.FailureDecider decider;
+
+    private final Executor executor;
+
+    private final int maxInFlight;
+
+    private final RabbitMetrics rabbitMetrics;
+
+    private final LifecycleJournal journal;
+
+    //签收只能在原channel上进行，每个channel单独记录
+    private final Map<Channel, AckTracker> trackers = new ConcurrentHashMap<>();
+
+    public AsyncMessageListener(MessageHandler handler, BatchMessageListener.FailureDecider decider,
+                                Executor executor, int maxInFlight, RabbitMetrics rabbitMetrics,
+                                LifecycleJournal journal){
+        this.handler = handler;
+        this.decider = decider;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.rabbitMetrics = rabbitMetrics;
+        this.journal = journal;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        AckTracker tracker = trackers.computeIfAbsent(channel, this::newTracker);
+        tracker.permits.acquire();
+        MessageProperties properties = message.getMessageProperties();
+        Delivery delivery = new Delivery(properties.getDeliveryTag(), properties.getConsumerQueue(),
+                DeduplicatingMessageListener.correlationId(message));
+        synchronized (tracker) {
+            tracker.pending.addLast(delivery);
+        }
+        try {
+            executor.execute(() -> process(tracker, delivery, message));
+        } catch (RejectedExecutionException e) {
+            //线程池已经关闭，消息保持未签收，channel关闭后由broker重新投递
+            synchronized (tracker) {
+                tracker.pending.remove(delivery);
+            }
+            tracker.permits.release();
+            throw e;
+        }
+    }
+
+    private AckTracker newTracker(Channel channel){
+        AckTracker tracker = new AckTracker(channel, maxInFlight);
+        //channel关闭后没签收的消息由broker重新投递，记录直接丢弃
+        channel.addShutdownListener(cause -> trackers.remove(channel, tracker));
+        return tracker;
+    }
+
+    private void process(AckTracker tracker, Delivery delivery, Message message){
+        boolean success;
+        boolean requeue = false;
+        try {
+            handler.handle(message);
+            success = true;
+        } catch (Exception e) {
+            BatchMessageListener.Disposition disposition = decider.decide(message);
+            //已经转入延迟重试队列，和处理成功一样按顺序签收
+            success = disposition == BatchMessageListener.Disposition.DELAYED;
+            requeue = disposition == BatchMessageListener.Disposition.REQUEUE;
+            if(disposition == BatchMessageListener.Disposition.DEAD_LETTER){
+                log.warn("消息处理失败,进入死信队列: {}", e.getMessage());
+            }
+        }
+        try {
+            complete(tracker, delivery, success, requeue);
+        } finally {
+            tracker.permits.release();
+        }
+    }
+
+    //在channel的记录上加锁，保证签收按tag递增的顺序发出
+    private void complete(AckTracker tracker, Delivery delivery, boolean success, boolean requeue){
+        synchronized (tracker) {
+            try {
+                if(success){
+                    delivery.state = Delivery.DONE;
+                }else{
+                    //拒绝过的tag不再是未签收状态，不能作为后面批量签收的tag
+                    tracker.channel.basicReject(delivery.tag, requeue);
+                    delivery.state = Delivery.REJECTED;
+                    rabbitMetrics.rejected(delivery.queue, requeue);
+                    journal.record(delivery.id, LifecycleEvent.REJECTED, delivery.queue, requeue ? 1 : 0);
+                }
+                long ackTag = -1;
+                while (!tracker.pending.isEmpty() && tracker.pending.peekFirst().state != Delivery.RUNNING) {
+                    Delivery head = tracker.pending.pollFirst();
+                    if(head.state == Delivery.DONE){
+                        ackTag = head.tag;
+                        rabbitMetrics.acked(head.queue);
+                        journal.record(head.id, LifecycleEvent.ACKED, head.queue, head.tag);
+                    }
+                }
+                if(ackTag >= 0){
+                    tracker.channel.basicAck(ackTag, true);
+                }
+            } catch (IOException | ShutdownSignalException e) {
+                trackers.remove(tracker.channel, tracker);
+                log.warn("签收失败,channel已关闭", e);
+            }
+        }
+    }
+
+    //所有channel上已经交给线程池但还没签收的消息数
+    public int pendingCount(){
+        int count = 0;
+        for (AckTracker tracker : trackers.values()) {
+            synchronized (tracker) {
+                count += tracker.pending.size();
+            }
+        }
+        return count;
+    }
+
+    private static final class AckTracker {
+
+        private final Channel channel;
+
+        //同时在处理的消息数
+        private final Semaphore permits;
+
+        //按投递顺序排列的未签收消息
+        private final ArrayDeque<Delivery> pending = new ArrayDeque<>();
+
+        private AckTracker(Channel channel, int maxInFlight){
+            this.channel = channel;
+            this.permits = new Semaphore(maxInFlight);
+        }
+    }
+
+    private static final class Delivery {
+
+        private static final int RUNNING = 0;
+        private static final int DONE = 1;
+        private static final int REJECTED = 2;
+
+        private final long tag;
+
+        private final String queue;
+
+        private final String id;
+
+        //只在AckTracker锁内读写
+        private int state = RUNNING;
+
+        private Delivery(long tag, String queue, String id){
+            this.tag = tag;
+            this.queue = queue;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.df.service;
+
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：批量消费。每个channel上的消息攒够batchSize条或者等待超过window毫秒后一起交给处理逻辑，
+ * 成功后用basicAck(lastTag, true)一次签收整批；失败时二分重试，只有单条仍然失败的消息才会被拒绝，
+ * 由FailureDecider决定重新入队、转入延迟重试队列后签收，还是进入死信队列。
+ * 二分时同一条消息可能被处理多次，处理逻辑需要幂等。需要MANUAL签收，prefetch不能小于batchSize
+ */
+public class BatchMessageListener implements ChannelAwareMessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchMessageListener.class);
+
+    //批量处理逻辑，抛出异常表示这一批中至少有一条处理失败
+    public interface BatchHandler {
+        void handle(List<Message> messages) throws Exception;
+    }
+
+    //单条消息处理失败后的去向
+    public enum Disposition {
+        //拒绝并重新入队
+        REQUEUE,
+        //已经转入延迟重试队列或隔离存储，原消息签收
+        DELAYED,
+        //拒绝进入死信队列
+        DEAD_LETTER
+    }
+
+    public interface FailureDecider {
+        Disposition decide(Message message);
+    }
+
+    private final BatchHandler handler;
+
+    private final FailureDecider decider;
+
+    //可以在运行时调整，正在攒的批次按新的数量判断
+    private volatile int batchSize;
+
+    private final long window;
+
+    private final RabbitMetrics rabbitMetrics;
+
+    private final LifecycleJournal journal;
+
+    private final ScheduledExecutorService flusher;
+
+    //每个消费者channel各自攒批，签收只能在原channel上进行
+    private final Map<Channel, Batch> batches = new ConcurrentHashMap<>();
+
+    public BatchMessageListener(BatchHandler handler, FailureDecider decider, int batchSize, long window,
+                                RabbitMetrics rabbitMetrics, LifecycleJournal journal){
+        this.handler = handler;
+        this.decider = decider;
+        this.batchSize = batchSize;
+        this.window = window;
+        this.rabbitMetrics = rabbitMetrics;
+        this.journal = journal;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batch-listener-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        Batch batch = batches.computeIfAbsent(channel, Batch::new);
+        synchronized (batch) {
+            batch.messages.add(message);
+            if(batch.messages.size() >= batchSize){
+                flush(batch);
+            }else if(batch.messages.size() == 1){
+                //本批第一条消息到达时开始计时，超时后即使没攒够也处理
+                long generation = batch.generation;
+                flusher.schedule(() -> flushIfSame(batch, generation), window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flushIfSame(Batch batch, long generation){
+        synchronized (batch) {
+            if(batch.generation == generation && !batch.messages.isEmpty()){
+                flush(batch);
+            }
+        }
+    }
+
+    //调用方持有batch锁
+    private void flush(Batch batch){
+        List<Message> messages = new ArrayList<>(batch.messages);
+        batch.messages.clear();
+        batch.generation++;
+        try {
+            process(batch.channel, messages);
+        } catch (IOException | ShutdownSignalException e) {
+            //channel已经关闭(例如消费者被缩容或容器重启)，未签收的消息会由broker重新投递
+            batches.remove(batch.channel, batch);
+            log.warn("批量签收失败,channel已关闭", e);
+        }
+    }
+
+    //按顺序处理，前面的消息都已经签收或拒绝，所以可以对最后一个tag批量签收
+    private void process(Channel channel, List<Message> messages) throws IOException {
+        Exception failure = null;
+        try {
+            handler.handle(messages);
+        } catch (Exception e) {
+            failure = e;
+        }
+        if(failure == null){
+            channel.basicAck(lastTag(messages), true);
+            for (Message message : messages) {
+                MessageProperties properties = message.getMessageProperties();
+                rabbitMetrics.acked(properties.getConsumerQueue());
+                journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.ACKED,
+                        properties.getConsumerQueue(), properties.getDeliveryTag());
+            }
+        }else if(messages.size() == 1){
+            Message message = messages.get(0);
+            Disposition disposition = decider.decide(message);
+            if(disposition == Disposition.DELAYED){
+                //前面的消息都已经处理过，单独签收这一条
+                channel.basicAck(lastTag(messages), false);
+                rabbitMetrics.acked(message.getMessageProperties().getConsumerQueue());
+                journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.ACKED,
+                        message.getMessageProperties().getConsumerQueue(), lastTag(messages));
+                return;
+            }
+            boolean requeue = disposition == Disposition.REQUEUE;
+            if(!requeue){
+                log.warn("消息处理失败,进入死信队列: {}", failure.getMessage());
+            }
+            channel.basicReject(lastTag(messages), requeue);
+            rabbitMetrics.rejected(message.getMessageProperties().getConsumerQueue(), requeue);
+            journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.REJECTED,
+                    message.getMessageProperties().getConsumerQueue(), requeue ? 1 : 0);
+        }else{
+            int middle = messages.size() >>> 1;
+            process(channel, messages.subList(0, middle));
+            process(channel, messages.subList(middle, messages.size()));
+        }
+    }
+
+    private static long lastTag(List<Message> messages){
+        return messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+    }
+
+    private static final class Batch {
+
+        private final Channel channel;
+
+        private final List<Message> messages = new ArrayList<>();
+
+        //每次flush后递增，过期的定时flush直接忽略
+        private long generation;
+
+        private Batch(Channel channel){
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.df.service;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：本地记录已发送但还没有收到confirm的消息及其失败次数。
+ * 正常确认只操作本地map，只有发送失败时才把失败次数异步写入redis
+ */
+@Component
+public class ConfirmTracker {
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    @Value("${redisson_operator.error_key}")
+    private String ERROR_IN_EXCHANGE;
+
+    //失败次数在redis中的保留时间(s)
+    @Value("${confirm.failure_ttl}")
+    private long FAILURE_TTL;
+
+    //correlationId -> 失败次数
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    //发送前登记
+    public void track(String correlationId){
+        inFlight.putIfAbsent(correlationId, new AtomicInteger());
+    }
+
+    //收到ack，只有之前失败过的消息才需要清理redis中的记录
+    public void confirmed(String correlationId){
+        AtomicInteger failures = inFlight.remove(correlationId);
+        if(failures != null && failures.get() > 0){
+            redissonClient.getBucket(key(correlationId)).deleteAsync();
+        }
+    }
+
+    //收到nack，返回累计的失败次数
+    public int failed(String correlationId){
+        AtomicInteger failures = inFlight.computeIfAbsent(correlationId, id -> new AtomicInteger());
+        int times = failures.incrementAndGet();
+        RBucket<Object> bucket = redissonClient.getBucket(key(correlationId));
+        bucket.setAsync(String.valueOf(times), FAILURE_TTL, TimeUnit.SECONDS);
+        return times;
+    }
+
+    //放弃重发，本地不再跟踪，redis中的失败记录保留到过期
+    public void abandon(String correlationId){
+        inFlight.remove(correlationId);
+    }
+
+    public int inFlightCount(){
+        return inFlight.size();
+    }
+
+    private String key(String correlationId){
+        return ERROR_IN_EXCHANGE + "::" + correlationId;
+    }
+}
@@ -0,0 +1,394 @@
+package com.df.service;
+
+import com.df.metrics.RabbitMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：订单队列消费者数量和prefetch的自动调整。定时采样订单队列的积压、消费速率、处理耗时和消费者繁忙程度，
+ * 按积压清空时间是否超过目标决定扩容还是缩容：消费者忙不过来时增加消费者，消费者空闲却消费慢时说明在等broker投递，增大prefetch。
+ * 连续多次采样方向一致才调整，调整后冷却一段时间再继续，避免来回抖动。
+ * 消费者数量不超过channel缓存数减去预留给死信容器、order1容器的数量；prefetch只对新建的消费者生效，调整prefetch时由PrefetchRoller在后台重启容器
+ */
+@Component
+public class ConsumerAutoscaler {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerAutoscaler.class);
+
+    @Autowired
+    AmqpAdmin amqpAdmin;
+
+    @Autowired
+    ConnectionFactory connectionFactory;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PrefetchRoller prefetchRoller;
+
+    @Lazy
+    @Autowired
+    @Qualifier("messageContainer")
+    SimpleMessageListenerContainer messageContainer;
+
+    @Value("${order.queue_name}")
+    private String ORDER_QUEUE_NAME;
+    //order1队列单独一个容器，它的消费者占用同一个连接上的channel
+    @Value("${lanes.order1.max_consumers}")
+    private int ORDER1_MAX_CONSUMERS;
+
+    @Value("${listener.batch_enabled}")
+    private boolean BATCH_ENABLED;
+    @Value("${listener.batch_size}")
+    private int BATCH_SIZE;
+    @Value("${listener.async_enabled}")
+    private boolean ASYNC_ENABLED;
+    @Value("${listener.async_workers}")
+    private int ASYNC_WORKERS;
+    @Value("${listener.async_max_in_flight}")
+    private int ASYNC_MAX_IN_FLIGHT;
+
+    @Value("${autoscale.enabled}")
+    private boolean ENABLED;
+    //采样间隔(ms)
+    @Value("${autoscale.interval}")
+    private long INTERVAL;
+    @Value("${autoscale.min_consumers}")
+    private int MIN_CONSUMERS;
+    @Value("${autoscale.max_consumers}")
+    private int MAX_CONSUMERS;
+    @Value("${autoscale.min_prefetch}")
+    private int MIN_PREFETCH;
+    @Value("${autoscale.max_prefetch}")
+    private int MAX_PREFETCH;
+    //积压清空时间的目标(ms)
+    @Value("${autoscale.target_drain}")
+    private long TARGET_DRAIN;
+    //清空时间低于目标的这个比例并且消费者空闲时才缩容
+    @Value("${autoscale.low_watermark}")
+    private double LOW_WATERMARK;
+    //消费者繁忙程度超过这个值时扩容加消费者，否则加prefetch
+    @Value("${autoscale.busy_utilization}")
+    private double BUSY_UTILIZATION;
+    //连续几次采样需要扩容才扩容
+    @Value("${autoscale.up_samples}")
+    private int UP_SAMPLES;
+    //连续几次采样可以缩容才缩容
+    @Value("${autoscale.down_samples}")
+    private int DOWN_SAMPLES;
+    //调整后的冷却时间(ms)
+    @Value("${autoscale.cooldown}")
+    private long COOLDOWN;
+    //channel缓存中预留给死信容器和RabbitAdmin的数量，发送端使用独立的连接
+    @Value("${autoscale.reserved_channels}")
+    private int RESERVED_CHANNELS;
+
+    private ScheduledExecutorService sampler;
+
+    private String[] queues;
+
+    //当前生效的设置，在采样线程或者手动调整时加锁修改
+    private volatile int consumers;
+    private volatile int prefetch;
+    private int maxConsumers;
+    private int minPrefetch;
+
+    //上一次采样时每个队列的处理次数和处理总耗时
+    private long[] lastCounts;
+    private long[] lastNanos;
+    private long lastSampleAt;
+
+    private int upStreak;
+    private int downStreak;
+    private long cooldownUntil;
+
+    //最近一次采样的结果
+    private volatile long[] depths;
+    private volatile double[] drainRates;
+    private volatile double worstDrainMillis;
+    private volatile double utilization;
+    private volatile double avgProcessingMillis;
+    private volatile long adjustments;
+    private volatile String lastDecision = "none";
+
+    @PostConstruct
+    public void init(){
+        queues = new String[]{ORDER_QUEUE_NAME};
+        depths = new long[queues.length];
+        drainRates = new double[queues.length];
+        lastCounts = new long[queues.length];
+        lastNanos = new long[queues.length];
+        //批量消费时prefetch至少要能容纳一批，异步消费时至少要能填满每个channel的处理上限
+        minPrefetch = ASYNC_ENABLED ? Math.max(MIN_PREFETCH, ASYNC_MAX_IN_FLIGHT)
+                : BATCH_ENABLED ? Math.max(MIN_PREFETCH, BATCH_SIZE) : MIN_PREFETCH;
+        maxConsumers = MAX_CONSUMERS;
+        if(connectionFactory instanceof CachingConnectionFactory){
+            int budget = ((CachingConnectionFactory) connectionFactory).getChannelCacheSize() - RESERVED_CHANNELS - ORDER1_MAX_CONSUMERS;
+            maxConsumers = Math.max(MIN_CONSUMERS, Math.min(MAX_CONSUMERS, budget));
+        }
+        consumers = MIN_CONSUMERS;
+        prefetch = minPrefetch;
+        Gauge.builder("rabbit_consumer_concurrency", () -> consumers).description("订单队列容器当前的消费者数量").register(meterRegistry);
+        Gauge.builder("rabbit_consumer_prefetch", () -> prefetch).description("订单队列容器当前的prefetch").register(meterRegistry);
+        for (int i = 0; i < queues.length; i++) {
+            int index = i;
+            Gauge.builder("rabbit_queue_depth", () -> depths[index]).description("最近一次采样的队列积压")
+                    .tag("queue", queues[i]).register(meterRegistry);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        if(!ENABLED){
+            return;
+        }
+        lastSampleAt = System.nanoTime();
+        snapshotProcessing(lastCounts, lastNanos);
+        sampler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("consumer-autoscaler", true));
+        sampler.scheduleWithFixedDelay(this::sampleSafely, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(sampler != null){
+            sampler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled(){
+        return ENABLED;
+    }
+
+    //容器创建时使用的初始消费者数量
+    public int getConsumers(){
+        return consumers;
+    }
+
+    //容器创建时使用的初始prefetch
+    public int getPrefetch(){
+        return prefetch;
+    }
+
+    //手动指定消费者数量和prefetch，之后冷却一段时间再从手动设置的值继续自动调整
+    public synchronized void override(Integer target, Integer prefetchTarget){
+        if(target != null && target != consumers){
+            applyConsumers(Math.max(1, Math.min(maxConsumers, target)), "手动调整");
+        }
+        if(prefetchTarget != null && prefetchTarget != prefetch){
+            applyPrefetch(Math.max(minPrefetch, prefetchTarget), "手动调整");
+        }
+    }
+
+    //批量消费的batch_size调整后，prefetch下限跟着变化
+    public synchronized void batchSizeChanged(int batchSize){
+        if(ASYNC_ENABLED || !BATCH_ENABLED){
+            return;
+        }
+        minPrefetch = Math.max(MIN_PREFETCH, batchSize);
+        if(prefetch < minPrefetch){
+            applyPrefetch(minPrefetch, "batch_size调整为" + batchSize);
+        }
+    }
+
+    public int getMaxConsumers(){
+        return maxConsumers;
+    }
+
+    //和手动调整互斥
+    private synchronized void sampleSafely(){
+        try {
+            sample();
+        } catch (Exception e) {
+            log.warn("消费者自动调整采样失败", e);
+        }
+    }
+
+    private void sample(){
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleAt) / 1e9;
+        lastSampleAt = now;
+        long[] counts = new long[queues.length];
+        long[] nanos = new long[queues.length];
+        snapshotProcessing(counts, nanos);
+
+        long[] sampledDepths = new long[queues.length];
+        double[] rates = new double[queues.length];
+        long processed = 0;
+        long busyNanos = 0;
+        double worst = 0;
+        for (int i = 0; i < queues.length; i++) {
+            long count = counts[i] - lastCounts[i];
+            processed += count;
+            busyNanos += nanos[i] - lastNanos[i];
+            rates[i] = count / seconds;
+            sampledDepths[i] = depth(queues[i]);
+            if(sampledDepths[i] > 0){
+                //有积压但完全没有消费时按无限长处理
+                worst = Math.max(worst, rates[i] > 0 ? sampledDepths[i] * 1000D / rates[i] : Double.POSITIVE_INFINITY);
+            }
+        }
+        lastCounts = counts;
+        lastNanos = nanos;
+        depths = sampledDepths;
+        drainRates = rates;
+        worstDrainMillis = worst;
+        //异步消费时处理在工作线程上进行，繁忙程度按工作线程数计算
+        int parallelism = ASYNC_ENABLED ? ASYNC_WORKERS : consumers;
+        utilization = Math.min(1D, busyNanos / (seconds * 1e9 * Math.max(1, parallelism)));
+        avgProcessingMillis = processed == 0 ? 0 : busyNanos / 1e6 / processed;
+
+        if(System.currentTimeMillis() < cooldownUntil){
+            return;
+        }
+        if(worst > TARGET_DRAIN){
+            downStreak = 0;
+            if(++upStreak >= UP_SAMPLES){
+                scaleUp(worst);
+            }
+        }else if(worst < TARGET_DRAIN * LOW_WATERMARK && utilization < BUSY_UTILIZATION / 2){
+            upStreak = 0;
+            if(++downStreak >= DOWN_SAMPLES){
+                scaleDown();
+            }
+        }else{
+            //在上下阈值之间保持不变
+            upStreak = 0;
+            downStreak = 0;
+        }
+    }
+
+    private void scaleUp(double worst){
+        if(ASYNC_ENABLED && utilization >= BUSY_UTILIZATION){
+            //工作线程已经忙满，再加消费者和prefetch也不会更快
+            lastDecision = "异步消费工作线程已饱和";
+            upStreak = 0;
+            return;
+        }
+        //异步消费时每个channel的并发受处理上限限制，增加消费者比增加prefetch有效
+        if((ASYNC_ENABLED || utilization >= BUSY_UTILIZATION || prefetch >= MAX_PREFETCH) && consumers < maxConsumers){
+            //按清空时间超出目标的倍数加消费者，一次最多翻倍
+            double pressure = Double.isInfinite(worst) ? 2D : Math.min(2D, worst / TARGET_DRAIN);
+            int target = Math.min(maxConsumers, Math.max(consumers + 1, (int) Math.ceil(consumers * pressure)));
+            applyConsumers(target, String.format("积压清空需要%.0fms,消费者繁忙%.0f%%", worst, utilization * 100));
+        }else if(prefetch < MAX_PREFETCH){
+            applyPrefetch(Math.min(MAX_PREFETCH, prefetch * 2), String.format("积压清空需要%.0fms,消费者繁忙%.0f%%", worst, utilization * 100));
+        }else{
+            lastDecision = "已达到消费者和prefetch上限";
+            upStreak = 0;
+        }
+    }
+
+    //先减消费者，减到下限后再减prefetch
+    private void scaleDown(){
+        if(consumers > MIN_CONSUMERS){
+            applyConsumers(consumers - 1, "负载较低");
+        }else if(prefetch > minPrefetch){
+            applyPrefetch(Math.max(minPrefetch, prefetch / 2), "负载较低");
+        }else{
+            downStreak = 0;
+        }
+    }
+
+    //并发数和最大并发数设成同一个值，关闭容器自带的扩缩容
+    private void applyConsumers(int target, String reason){
+        if(target > consumers){
+            messageContainer.setMaxConcurrentConsumers(target);
+            messageContainer.setConcurrentConsumers(target);
+        }else{
+            messageContainer.setConcurrentConsumers(target);
+            messageContainer.setMaxConcurrentConsumers(target);
+        }
+        adjusted("消费者 " + consumers + " -> " + target + ", " + reason);
+        consumers = target;
+    }
+
+    //已经建立的消费者不会更新basic.qos，在后台重启容器，容器短暂不消费
+    private void applyPrefetch(int target, String reason){
+        prefetchRoller.update("messageContainer", messageContainer, target);
+        adjusted("prefetch " + prefetch + " -> " + target + ", " + reason);
+        prefetch = target;
+    }
+
+    private void adjusted(String decision){
+        log.info("消费者自动调整: {}", decision);
+        lastDecision = decision;
+        adjustments++;
+        upStreak = 0;
+        downStreak = 0;
+        cooldownUntil = System.currentTimeMillis() + COOLDOWN;
+    }
+
+    private void snapshotProcessing(long[] counts, long[] nanos){
+        for (int i = 0; i < queues.length; i++) {
+            Timer timer = rabbitMetrics.consumerProcessing().get(queues[i]);
+            counts[i] = timer.count();
+            nanos[i] = (long) timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private long depth(String queue){
+        Properties properties = amqpAdmin.getQueueProperties(queue);
+        if(properties == null){
+            return 0;
+        }
+        Object count = properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("consumers", consumers);
+        stats.put("activeConsumers", messageContainer.getActiveConsumerCount());
+        stats.put("maxConsumers", maxConsumers);
+        stats.put("prefetch", prefetch);
+        long[] sampledDepths = depths;
+        double[] rates = drainRates;
+        for (int i = 0; i < queues.length; i++) {
+            Map<String, Object> queue = new LinkedHashMap<>();
+            queue.put("depth", sampledDepths[i]);
+            queue.put("drainRate", rates[i]);
+            stats.put(queues[i], queue);
+        }
+        double worst = worstDrainMillis;
+        stats.put("worstDrainMillis", Double.isInfinite(worst) ? "infinite" : worst);
+        stats.put("targetDrainMillis", TARGET_DRAIN);
+        stats.put("utilization", utilization);
+        stats.put("avgProcessingMillis", avgProcessingMillis);
+        stats.put("adjustments", adjustments);
+        stats.put("lastDecision", lastDecision);
+        return stats;
+    }
+}
@@ -0,0 +1,139 @@
+package com.df.service;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消费失败次数统计。是否重新入队只看本地计数和x-death中的次数，不在消费线程上访问redis；
+ * 计数变化先放入队列，定时用RBatch一次提交到redis，返回的全局次数再合并回本地，多实例之间最终一致
+ */
+@Component
+public class ConsumerRetryCounter {
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    //消费失败最多尝试次数，达到后拒绝进入死信队列
+    @Value("${consumer_retry.max_attempts}")
+    private int MAX_ATTEMPTS;
+    @Value("${consumer_retry.key}")
+    private String KEY;
+    //redis中计数的有效时间(s)
+    @Value("${consumer_retry.ttl}")
+    private long TTL;
+    //提交到redis的间隔(ms)
+    @Value("${consumer_retry.flush_interval}")
+    private long FLUSH_INTERVAL;
+
+    //correlationId -> 已失败次数
+    private final ConcurrentHashMap<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<String> increments = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<String> deletes = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start(){
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "consumer-retry-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop(){
+        flusher.shutdown();
+        flush();
+    }
+
+    //记录一次失败，返回true表示还可以重新入队，false表示应该进入死信队列
+    public boolean recordFailure(Message message){
+        String id = DeduplicatingMessageListener.correlationId(message);
+        if(id == null){
+            return false;
+        }
+        AtomicInteger counter = attempts.computeIfAbsent(id, key -> new AtomicInteger());
+        int deadLettered = xDeathCount(message.getMessageProperties());
+        int times = counter.updateAndGet(current -> Math.max(current, deadLettered) + 1);
+        increments.offer(id);
+        if(times >= MAX_ATTEMPTS){
+            clear(id);
+            return false;
+        }
+        return true;
+    }
+
+    //处理成功或者已经进入死信队列，失败过的才需要删除redis计数
+    public void clear(String id){
+        if(id != null && attempts.remove(id) != null){
+            deletes.offer(id);
+        }
+    }
+
+    //x-death中当前队列被死信的次数，消息经过死信再回到队列时累计
+    private static int xDeathCount(MessageProperties properties){
+        List<Map<String, ?>> deaths = properties.getXDeathHeader();
+        if(deaths == null){
+            return 0;
+        }
+        long count = 0;
+        for (Map<String, ?> death : deaths) {
+            Object queue = death.get("queue");
+            Object times = death.get("count");
+            if(queue != null && queue.equals(properties.getConsumerQueue()) && times instanceof Number){
+                count += ((Number) times).longValue();
+            }
+        }
+        return (int) count;
+    }
+
+    //一次RBatch提交所有积累的计数变化
+    void flush(){
+        if(increments.isEmpty() && deletes.isEmpty()){
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        String id;
+        while ((id = increments.poll()) != null) {
+            String key = KEY + "::" + id;
+            String counted = id;
+            RFuture<Long> future = batch.getAtomicLong(key).incrementAndGetAsync();
+            batch.getAtomicLong(key).expireAsync(TTL, TimeUnit.SECONDS);
+            //其他实例的失败次数合并到本地
+            future.onComplete((total, e) -> {
+                AtomicInteger counter = total == null ? null : attempts.get(counted);
+                if(counter != null){
+                    counter.accumulateAndGet(total.intValue(), Math::max);
+                }
+            });
+        }
+        while ((id = deletes.poll()) != null) {
+            batch.getAtomicLong(KEY + "::" + id).deleteAsync();
+        }
+        batch.executeAsync();
+    }
+}
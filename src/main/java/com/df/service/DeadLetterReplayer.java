@@ -0,0 +1,289 @@
+package com.df.service;
+
+import com.df.entity.PublishCorrelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.MessagePropertiesBuilder;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：死信队列重放。死信监听容器默认不启动，由管理接口启动或暂停；
+ * 每批死信根据x-death判断原因和次数，可以重放的按令牌桶限速发回原交换机，其余写入隔离存储。
+ * 整批签收前等待重放消息的confirm，没有确认的同样写入隔离存储
+ */
+@Component
+public class DeadLetterReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayer.class);
+
+    @Autowired
+    SendMessage sendMessage;
+
+    @Autowired
+    QuarantineStore quarantineStore;
+
+    @Autowired
+    ConsumerRetryCounter consumerRetryCounter;
+
+    //容器的启停和调整prefetch时的重启互斥
+    @Autowired
+    PrefetchRoller prefetchRoller;
+
+    @Lazy
+    @Autowired
+    @Qualifier("DeadMessageContainer")
+    SimpleMessageListenerContainer deadMessageContainer;
+
+    @Value("${order.exchange_name}")
+    private String ORDER_EXCHANGE_NAME;
+    @Value("${order1.exchange_name}")
+    private String ORDER1_EXCHANGE;
+
+    //每秒最多重放的消息数
+    @Value("${replay.rate}")
+    private double RATE;
+    //一条消息最多被死信的次数，超过后不再重放
+    @Value("${replay.max_deaths}")
+    private long MAX_DEATHS;
+    //可以重放的死信原因
+    @Value("${replay.reasons}")
+    private String REASONS;
+    //等待重放消息confirm的超时时间(ms)
+    @Value("${replay.confirm_timeout}")
+    private long CONFIRM_TIMEOUT;
+
+    private TokenBucket tokenBucket;
+
+    private Set<String> replayableExchanges;
+
+    private Set<String> replayableReasons;
+
+    private volatile long startedAt;
+
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+    private final LongAdder replayFailed = new LongAdder();
+
+    //当前投递中已经重放确认或写入隔离存储的消息(consumerTag:deliveryTag)。处理失败二分重试时同一批会再次进入，
+    //已经处理过的不再发送；签收前清除，消息再次死信回来是新的投递，重新判断
+    private final Set<String> handledDeliveries = ConcurrentHashMap.newKeySet();
+
+    //按死信原因分类的数量
+    private final Map<String, LongAdder> reasons = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init(){
+        tokenBucket = new TokenBucket(RATE, Math.max(1, RATE));
+        replayableExchanges = new HashSet<>(Arrays.asList(ORDER_EXCHANGE_NAME, ORDER1_EXCHANGE));
+        replayableReasons = new HashSet<>(Arrays.asList(REASONS.split(",")));
+    }
+
+    public synchronized void start(Double rate){
+        if(rate != null && rate > 0){
+            tokenBucket.setRate(rate, Math.max(1, rate));
+        }
+        if(!deadMessageContainer.isRunning()){
+            startedAt = System.currentTimeMillis();
+            prefetchRoller.start(deadMessageContainer);
+        }
+    }
+
+    //停止消费，已经预取但没处理的死信由broker放回死信队列
+    public synchronized void pause(){
+        prefetchRoller.stop(deadMessageContainer);
+    }
+
+    //处理一批死信，在死信监听线程上执行，重放的消息全部确认或写入隔离存储后才整批签收
+    public void replay(List<Message> messages) throws Exception {
+        List<PublishCorrelation> replays = new ArrayList<>(messages.size());
+        List<String> replayKeys = new ArrayList<>(messages.size());
+        List<QuarantineStore.Quarantined> rejects = new ArrayList<>();
+        List<String> rejectKeys = new ArrayList<>();
+        for (Message message : messages) {
+            String key = deliveryKey(message);
+            if(handledDeliveries.contains(key)){
+                //二分重试，这次投递已经重放或隔离过
+                continue;
+            }
+            drained.increment();
+            MessageProperties properties = message.getMessageProperties();
+            Map<String, ?> death = lastDeath(properties);
+            String id = DeduplicatingMessageListener.correlationId(message);
+            String reason = death == null ? "unknown" : String.valueOf(death.get("reason"));
+            reasons.computeIfAbsent(reason, r -> new LongAdder()).increment();
+            String exchange = death == null ? null : (String) death.get("exchange");
+            String routingKey = death == null ? null : firstRoutingKey(death.get("routing-keys"));
+            if(death != null && replayableReasons.contains(reason) && replayableExchanges.contains(exchange)
+                    && routingKey != null && totalDeaths(properties) <= MAX_DEATHS){
+                //沿用原来的消息id，消费端去重和重试计数仍然有效
+                PublishCorrelation correlation = new PublishCorrelation(id == null ? UUID.randomUUID().toString() : id, exchange, routingKey);
+                correlation.setReturnedMessage(forRepublish(message));
+                replays.add(correlation);
+                replayKeys.add(key);
+            }else{
+                rejects.add(new QuarantineStore.Quarantined(id, exchange, routingKey, reason, message));
+                rejectKeys.add(key);
+            }
+        }
+        if(!rejects.isEmpty()){
+            quarantineStore.write(rejects);
+            quarantined.add(rejects.size());
+            handledDeliveries.addAll(rejectKeys);
+        }
+        if(!replays.isEmpty()){
+            //每条消息一个令牌，超过速率时在死信监听线程上等待
+            for (int i = 0; i < replays.size(); i++) {
+                tokenBucket.acquire(1);
+            }
+            sendMessage.republish(replays);
+            awaitConfirms(replays, replayKeys);
+        }
+        //接下来整批签收，这些投递不会再出现
+        for (Message message : messages) {
+            handledDeliveries.remove(deliveryKey(message));
+        }
+    }
+
+    //等待整批confirm，被拒绝、发送失败或超时的消息写入隔离存储，保证签收前每条都有去处
+    private void awaitConfirms(List<PublishCorrelation> replays, List<String> keys) throws IOException {
+        List<QuarantineStore.Quarantined> failures = new ArrayList<>();
+        List<String> failureKeys = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + CONFIRM_TIMEOUT;
+        for (int i = 0; i < replays.size(); i++) {
+            PublishCorrelation correlation = replays.get(i);
+            String failure;
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.MILLISECONDS);
+                failure = confirm.isAck() ? null : confirm.getReason();
+            } catch (TimeoutException e) {
+                failure = "等待确认超时";
+            } catch (ExecutionException e) {
+                failure = e.getCause().getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "等待确认被中断";
+            }
+            if(failure == null){
+                handledDeliveries.add(keys.get(i));
+                replayed.increment();
+            }else{
+                failureKeys.add(keys.get(i));
+                log.warn("死信重放失败,写入隔离存储, id: {} 原因: {}", correlation.getId(), failure);
+                failures.add(new QuarantineStore.Quarantined(correlation.getId(), correlation.getExchange(),
+                        correlation.getRoutingKey(), "replay_failed", correlation.getReturnedMessage()));
+            }
+        }
+        if(!failures.isEmpty()){
+            quarantineStore.write(failures);
+            quarantined.add(failures.size());
+            replayFailed.add(failures.size());
+            handledDeliveries.addAll(failureKeys);
+        }
+    }
+
+    //死信监听处理失败时(例如隔离存储写入失败)的去向：重新入队的次数有上限，超过后写入隔离存储，写入仍然失败才丢弃
+    public BatchMessageListener.Disposition decide(Message message){
+        //单条的去向在这里决定，之后签收或拒绝
+        handledDeliveries.remove(deliveryKey(message));
+        if(consumerRetryCounter.recordFailure(message)){
+            return BatchMessageListener.Disposition.REQUEUE;
+        }
+        String id = DeduplicatingMessageListener.correlationId(message);
+        try {
+            quarantineStore.write(Collections.singletonList(
+                    new QuarantineStore.Quarantined(id, null, null, "replay_failed", message)));
+            quarantined.increment();
+            //已经写入隔离存储，原消息签收
+            return BatchMessageListener.Disposition.DELAYED;
+        } catch (IOException e) {
+            log.error("死信重放多次失败并且无法写入隔离存储,丢弃消息, id: {}", id, e);
+            return BatchMessageListener.Disposition.DEAD_LETTER;
+        }
+    }
+
+    //收到的消息deliveryMode为空，按原来的投递方式重新发送，默认持久化
+    private static Message forRepublish(Message message){
+        MessageProperties received = message.getMessageProperties();
+        MessageProperties properties = MessagePropertiesBuilder.fromClonedProperties(received).build();
+        MessageDeliveryMode deliveryMode = received.getReceivedDeliveryMode();
+        properties.setDeliveryMode(deliveryMode == null ? MessageDeliveryMode.PERSISTENT : deliveryMode);
+        return MessageBuilder.withBody(message.getBody()).andProperties(properties).build();
+    }
+
+    //同一条消息重新投递或者再次死信回来时deliveryTag不同
+    private static String deliveryKey(Message message){
+        MessageProperties properties = message.getMessageProperties();
+        return properties.getConsumerTag() + ":" + properties.getDeliveryTag();
+    }
+
+    //x-death按时间倒序，第一条是最近一次死信
+    private static Map<String, ?> lastDeath(MessageProperties properties){
+        List<Map<String, ?>> deaths = properties.getXDeathHeader();
+        return deaths == null || deaths.isEmpty() ? null : deaths.get(0);
+    }
+
+    private static long totalDeaths(MessageProperties properties){
+        long total = 0;
+        for (Map<String, ?> death : properties.getXDeathHeader()) {
+            Object count = death.get("count");
+            total += count instanceof Number ? ((Number) count).longValue() : 1;
+        }
+        return total;
+    }
+
+    private static String firstRoutingKey(Object routingKeys){
+        if(routingKeys instanceof List && !((List<?>) routingKeys).isEmpty()){
+            return String.valueOf(((List<?>) routingKeys).get(0));
+        }
+        return null;
+    }
+
+    public Map<String, Object> report(){
+        Map<String, Object> report = new LinkedHashMap<>();
+        long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+        report.put("running", deadMessageContainer.isRunning());
+        report.put("rate", tokenBucket.getRate());
+        report.put("drained", drained.sum());
+        report.put("replayed", replayed.sum());
+        report.put("quarantined", quarantined.sum());
+        report.put("replayFailed", replayFailed.sum());
+        report.put("quarantineBytes", quarantineStore.getBytes());
+        report.put("replayedPerSecond", startedAt == 0 ? 0 : replayed.sum() * 1000 / elapsed);
+        Map<String, Long> byReason = new LinkedHashMap<>();
+        reasons.forEach((reason, count) -> byReason.put(reason, count.sum()));
+        report.put("reasons", byReason);
+        return report;
+    }
+}
@@ -0,0 +1,50 @@
+package com.df.service;
+
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：放在业务监听前的去重，已经处理成功过的消息直接签收，不再交给后面的监听
+ */
+public class DeduplicatingMessageListener implements ChannelAwareMessageListener {
+
+    public static final String CORRELATION_HEADER = "spring_returned_message_correlation";
+
+    private final ChannelAwareMessageListener delegate;
+
+    private final IdempotencyCache idempotencyCache;
+
+    private final LifecycleJournal journal;
+
+    public DeduplicatingMessageListener(ChannelAwareMessageListener delegate, IdempotencyCache idempotencyCache,
+                                        LifecycleJournal journal){
+        this.delegate = delegate;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        MessageProperties properties = message.getMessageProperties();
+        String id = correlationId(message);
+        if(idempotencyCache.isProcessed(id)){
+            //单独签收，不影响同一channel上还没签收的其他消息
+            channel.basicAck(properties.getDeliveryTag(), false);
+            journal.record(id, LifecycleEvent.ACKED, properties.getConsumerQueue(), properties.getDeliveryTag());
+            return;
+        }
+        delegate.onMessage(message, channel);
+    }
+
+    public static String correlationId(Message message){
+        Object id = message.getMessageProperties().getHeaders().get(CORRELATION_HEADER);
+        return id == null ? null : id.toString();
+    }
+}
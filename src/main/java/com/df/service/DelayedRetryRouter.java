@@ -0,0 +1,140 @@
+package com.df.service;
+
+import com.df.config.PublisherPool;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.MessagePropertiesBuilder;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消费失败后的延迟重试。按x-death中经过重试队列的次数选择一级延迟，把消息原样发到该级的fanout交换机，
+ * routingKey为原队列名；重试队列设置了x-message-ttl，到期后死信到默认交换机，按routingKey回到原队列。
+ * 等待期间消息在broker中，不占用消费者。发到重试队列并收到confirm后原消息签收，
+ * 超过次数上限的消息进入死信队列；没有开启或者转入重试队列失败时按原来的重新入队计数处理
+ */
+@Component
+public class DelayedRetryRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(DelayedRetryRouter.class);
+
+    @Autowired
+    PublisherPool publisherPool;
+
+    @Autowired
+    ConsumerRetryCounter consumerRetryCounter;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @Value("${retry_tiers.enabled}")
+    private boolean ENABLED;
+    //每一级的延迟(ms)，重试次数超过级数后使用最后一级
+    @Value("${retry_tiers.delays}")
+    private long[] DELAYS;
+    //最多延迟重试次数，超过后进入死信队列
+    @Value("${retry_tiers.max_attempts}")
+    private int MAX_ATTEMPTS;
+    @Value("${retry_tiers.queue_prefix}")
+    private String QUEUE_PREFIX;
+    //转入重试队列等待confirm的超时时间(ms)
+    @Value("${retry_tiers.confirm_timeout}")
+    private long CONFIRM_TIMEOUT;
+
+    //重试队列和交换机的名字
+    public static String tierName(String prefix, long delay){
+        return prefix + "." + delay + "ms";
+    }
+
+    public BatchMessageListener.Disposition decide(Message message){
+        if(ENABLED){
+            MessageProperties properties = message.getMessageProperties();
+            int attempts = retryCount(properties);
+            if(attempts >= MAX_ATTEMPTS){
+                log.warn("延迟重试次数超过上限,进入死信队列, id: {}", DeduplicatingMessageListener.correlationId(message));
+                return BatchMessageListener.Disposition.DEAD_LETTER;
+            }
+            long delay = DELAYS[Math.min(attempts, DELAYS.length - 1)];
+            String id = DeduplicatingMessageListener.correlationId(message);
+            if(publish(message, id, tierName(QUEUE_PREFIX, delay), properties.getConsumerQueue())){
+                rabbitMetrics.delayed(properties.getConsumerQueue());
+                lifecycleJournal.record(id, LifecycleEvent.DELAYED, properties.getConsumerQueue(), delay);
+                return BatchMessageListener.Disposition.DELAYED;
+            }
+        }
+        return consumerRetryCounter.recordFailure(message)
+                ? BatchMessageListener.Disposition.REQUEUE : BatchMessageListener.Disposition.DEAD_LETTER;
+    }
+
+    //沿用原消息id，发送时会写入spring_returned_message_correlation，回到原队列后去重和跟踪不变
+    private boolean publish(Message message, String id, String exchange, String queue){
+        CorrelationData correlation = new CorrelationData(id == null ? UUID.randomUUID().toString() : id);
+        Message copy = forRetry(message);
+        try {
+            publisherPool.select().getTemplate().invoke(operations -> {
+                operations.send(exchange, queue, copy, correlation);
+                return null;
+            });
+            CorrelationData.Confirm confirm = correlation.getFuture().get(CONFIRM_TIMEOUT, TimeUnit.MILLISECONDS);
+            if(!confirm.isAck()){
+                log.warn("转入重试队列被拒绝: {} {}", exchange, confirm.getReason());
+            }
+            return confirm.isAck();
+        } catch (AmqpException | ExecutionException | TimeoutException e) {
+            log.warn("转入重试队列失败: {}", exchange, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    //收到的消息deliveryMode为空，直接发送会变成非持久化，在重试队列等待期间broker重启就会丢失
+    private static Message forRetry(Message message){
+        MessageProperties received = message.getMessageProperties();
+        MessageProperties properties = MessagePropertiesBuilder.fromClonedProperties(received).build();
+        MessageDeliveryMode deliveryMode = received.getReceivedDeliveryMode();
+        properties.setDeliveryMode(deliveryMode == null ? MessageDeliveryMode.PERSISTENT : deliveryMode);
+        return MessageBuilder.withBody(message.getBody()).andProperties(properties).build();
+    }
+
+    //经过重试队列到期回来的次数
+    private int retryCount(MessageProperties properties){
+        List<Map<String, ?>> deaths = properties.getXDeathHeader();
+        if(deaths == null){
+            return 0;
+        }
+        long count = 0;
+        for (Map<String, ?> death : deaths) {
+            Object queue = death.get("queue");
+            Object times = death.get("count");
+            if(queue != null && queue.toString().startsWith(QUEUE_PREFIX + ".") && times instanceof Number){
+                count += ((Number) times).longValue();
+            }
+        }
+        return (int) count;
+    }
+}
@@ -0,0 +1,220 @@
+package com.df.service;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消费端的幂等缓存，记录已经处理成功的消息id(spring_returned_message_correlation)。
+ * 先查布隆过滤器，不存在直接返回；可能存在再查带过期时间的有界map。
+ * 开启共享层后，处理成功的id异步写入redis，本地未命中时再查redis。发送端重发或重放的消息不带redelivered标记，
+ * 可能已经在其他实例处理过，所以每次本地未命中都要查询；redis不可用时按未处理返回，由处理逻辑保证幂等
+ */
+@Component
+public class IdempotencyCache {
+
+    private static final int HASHES = 4;
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    @Value("${dedup.enabled}")
+    private boolean ENABLED;
+    //本地最多记录的id数量
+    @Value("${dedup.max_size}")
+    private int MAX_SIZE;
+    //本地记录的有效时间(ms)
+    @Value("${dedup.ttl}")
+    private long TTL;
+    //是否使用redis共享层，多实例部署时开启
+    @Value("${dedup.shared_enabled}")
+    private boolean SHARED_ENABLED;
+    @Value("${dedup.shared_key}")
+    private String SHARED_KEY;
+    //redis中记录的有效时间(s)
+    @Value("${dedup.shared_ttl}")
+    private long SHARED_TTL;
+
+    //id -> 过期时间
+    private final ConcurrentHashMap<String, Long> processed = new ConcurrentHashMap<>();
+
+    //按写入顺序排列，用于淘汰最早的记录
+    private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+
+    //当前和上一代布隆过滤器，当前的写满MAX_SIZE后轮换，避免一直累积导致误判率升高
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private final AtomicInteger currentCount = new AtomicInteger();
+    private int bits;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bloomRejects = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder sharedErrors = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        //每个元素约10位，误判率1%左右
+        bits = Integer.highestOneBit(Math.max(64, MAX_SIZE * 10 - 1)) << 1;
+        current = new AtomicLongArray(bits >>> 6);
+        previous = new AtomicLongArray(bits >>> 6);
+    }
+
+    public boolean isEnabled(){
+        return ENABLED;
+    }
+
+    //是否已经处理过，本地未命中并且开启了共享层时查询redis
+    public boolean isProcessed(String id){
+        if(!ENABLED || id == null){
+            return false;
+        }
+        if(mightContain(id)){
+            Long expireAt = processed.get(id);
+            if(expireAt != null){
+                if(expireAt > System.currentTimeMillis()){
+                    hits.increment();
+                    return true;
+                }
+                processed.remove(id, expireAt);
+            }
+        }else{
+            bloomRejects.increment();
+        }
+        if(SHARED_ENABLED && isProcessedShared(id)){
+            sharedHits.increment();
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    private boolean isProcessedShared(String id){
+        try {
+            return redissonClient.getBucket(SHARED_KEY + "::" + id).isExists();
+        } catch (RuntimeException e) {
+            sharedErrors.increment();
+            return false;
+        }
+    }
+
+    //只查本地、不计入统计，给处理逻辑内部的重复检查使用
+    public boolean isProcessedLocally(String id){
+        if(!ENABLED || id == null || !mightContain(id)){
+            return false;
+        }
+        Long expireAt = processed.get(id);
+        return expireAt != null && expireAt > System.currentTimeMillis();
+    }
+
+    //处理成功后记录
+    public void markProcessed(String id){
+        if(!ENABLED || id == null){
+            return;
+        }
+        if(processed.put(id, System.currentTimeMillis() + TTL) == null){
+            order.offer(id);
+            add(id);
+            evict();
+        }
+        if(SHARED_ENABLED){
+            redissonClient.getBucket(SHARED_KEY + "::" + id).setAsync("1", SHARED_TTL, TimeUnit.SECONDS);
+        }
+    }
+
+    //超过容量或者已经过期的记录从最早写入的开始淘汰
+    private void evict(){
+        long now = System.currentTimeMillis();
+        String head;
+        while ((head = order.peek()) != null) {
+            Long expireAt = processed.get(head);
+            if(processed.size() <= MAX_SIZE && expireAt != null && expireAt > now){
+                return;
+            }
+            head = order.poll();
+            if(head != null && processed.remove(head) != null){
+                evictions.increment();
+            }
+        }
+    }
+
+    private void add(String id){
+        if(currentCount.incrementAndGet() > MAX_SIZE){
+            synchronized (this) {
+                if(currentCount.get() > MAX_SIZE){
+                    previous = current;
+                    current = new AtomicLongArray(bits >>> 6);
+                    currentCount.set(1);
+                }
+            }
+        }
+        AtomicLongArray filter = current;
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (bits - 1);
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long value;
+            while (((value = filter.get(index)) & mask) == 0 && !filter.compareAndSet(index, value, value | mask)) {
+                //并发写入同一个long时重试
+            }
+        }
+    }
+
+    private boolean mightContain(String id){
+        long hash = hash(id);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    private boolean contains(AtomicLongArray filter, long hash){
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & (bits - 1);
+            if((filter.get(bit >>> 6) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //String.hashCode已经缓存，再做一次64位混合得到两个独立的哈希值
+    private static long hash(String id){
+        long h = id.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return h | 1L << 32;
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("bloomRejects", bloomRejects.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("sharedHits", sharedHits.sum());
+        stats.put("sharedErrors", sharedErrors.sum());
+        stats.put("size", (long) processed.size());
+        return stats;
+    }
+}
@@ -0,0 +1,278 @@
+package com.df.service;
+
+import com.df.journal.JournalingMessageListener;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：订单分片队列和监听容器的管理。每个分片一个队列、一个只有单个消费者的容器，保证同一用户的消息按顺序处理，
+ * 分片之间并行，可以分布在broker的多个核心和集群节点上。
+ * 分片容器使用自己的OrderedMessageListener，失败的消息原地重试，用完次数后进入死信队列并暂停该用户，不经过延迟重试和重新入队；
+ * 异步消费不能保证同一channel上的处理顺序，开启时不启动分片。
+ * 调整分片数量时先声明并启动新增的分片，再切换路由；被移除的分片不再接收新消息，继续消费到队列为空后停止容器并删除队列。
+ * 重发和重放时被移除分片的routingKey由OrderShardRouter换到现有分片。
+ * 切换前已经在旧分片中的消息可能和切换后进入新分片的同一用户消息同时处理，需要严格顺序时在暂停发送期间调整
+ */
+@Component
+public class OrderShardManager {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderShardManager.class);
+
+    @Autowired
+    OrderShardRouter orderShardRouter;
+
+    @Autowired
+    AmqpAdmin amqpAdmin;
+
+    @Autowired
+    ConnectionFactory connectionFactory;
+
+    @Autowired
+    PrefetchRoller prefetchRoller;
+
+    @Autowired
+    ReceiveMessage receiveMessage;
+
+    @Autowired
+    IdempotencyCache idempotencyCache;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @Resource
+    Queue orderQueue;
+
+    @Resource
+    DirectExchange orderExchange;
+
+    //启动时的分片数量
+    @Value("${order_shard.count}")
+    private int COUNT;
+    //每个分片消费者的prefetch
+    @Value("${order_shard.prefetch}")
+    private int PREFETCH;
+    //检查被移除分片是否消费完的间隔(ms)
+    @Value("${order_shard.drain_interval}")
+    private long DRAIN_INTERVAL;
+    //处理失败时原地重试的最多次数，用完后进入死信队列并暂停该用户
+    @Value("${order_shard.max_attempts}")
+    private int MAX_ATTEMPTS;
+    //第一次重试前的等待(ms)，之后每次翻倍
+    @Value("${order_shard.retry_backoff}")
+    private long RETRY_BACKOFF;
+    @Value("${order_shard.max_backoff}")
+    private long MAX_BACKOFF;
+    @Value("${listener.async_enabled}")
+    private boolean ASYNC_ENABLED;
+
+    private final Map<Integer, SimpleMessageListenerContainer> containers = new TreeMap<>();
+
+    //所有分片容器共用，暂停的用户在各分片之间共享
+    private OrderedMessageListener orderedListener;
+
+    private MessageListener shardListener;
+
+    //分片容器当前使用的prefetch，运行时可以由RuntimeTuner调整，之后新增的分片也使用这个值
+    private int prefetch;
+
+    //已经移除、等待消费完的分片
+    private final TreeSet<Integer> draining = new TreeSet<>();
+
+    private ScheduledExecutorService drainer;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start(){
+        prefetch = PREFETCH;
+        if(!orderShardRouter.isEnabled()){
+            return;
+        }
+        if(ASYNC_ENABLED){
+            throw new IllegalStateException("异步消费同时处理同一channel上的多条消息，不能保证同一用户的顺序，不能和订单分片同时开启");
+        }
+        orderedListener = new OrderedMessageListener(receiveMessage.orderHandler(), receiveMessage::orderKey,
+                MAX_ATTEMPTS, RETRY_BACKOFF, MAX_BACKOFF, rabbitMetrics, lifecycleJournal);
+        shardListener = new JournalingMessageListener(new DeduplicatingMessageListener(orderedListener, idempotencyCache, lifecycleJournal),
+                lifecycleJournal, LifecycleEvent.DELIVERED);
+        drainer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("order-shard-drain", true));
+        drainer.scheduleWithFixedDelay(this::checkDraining, DRAIN_INTERVAL, DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+        for (int shard = 0; shard < COUNT; shard++) {
+            startShard(shard);
+        }
+        orderShardRouter.resize(COUNT);
+        log.info("订单分片队列已启动, 分片数量: {}", COUNT);
+    }
+
+    @PreDestroy
+    public synchronized void stop(){
+        if(drainer != null){
+            drainer.shutdownNow();
+        }
+        for (SimpleMessageListenerContainer container : containers.values()) {
+            container.stop();
+        }
+    }
+
+    //调整分片数量，返回调整后的状态
+    public synchronized Map<String, Object> rebalance(int count){
+        if(!orderShardRouter.isEnabled()){
+            throw new IllegalStateException("没有开启订单分片");
+        }
+        if(count < 1){
+            throw new IllegalArgumentException("分片数量至少为1");
+        }
+        int previous = orderShardRouter.getShards();
+        //新增的分片先能消费，再让消息路由过去；仍在排空的分片重新启用
+        for (int shard = 0; shard < count; shard++) {
+            draining.remove(shard);
+            if(!containers.containsKey(shard)){
+                startShard(shard);
+            }
+        }
+        orderShardRouter.resize(count);
+        for (int shard = count; shard < previous; shard++) {
+            draining.add(shard);
+        }
+        log.info("订单分片数量调整: {} -> {}, 等待排空: {}", previous, count, draining);
+        return stats();
+    }
+
+    private void startShard(int shard){
+        String queueName = orderShardRouter.shardQueue(shard);
+        //和原订单队列相同的死信设置
+        Queue queue = new Queue(queueName, true, false, false, orderQueue.getArguments());
+        amqpAdmin.declareQueue(queue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(queue).to(orderExchange).with(orderShardRouter.shardRoutingKey(shard)));
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queueName);
+        //每个分片只有一个消费者，同一用户的消息按进入队列的顺序处理
+        container.setConcurrentConsumers(1);
+        container.setMaxConcurrentConsumers(1);
+        container.setPrefetchCount(prefetch);
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        container.setConsumerTagStrategy(name -> name + "_" + UUID.randomUUID().toString());
+        container.setMessageListener(shardListener);
+        container.afterPropertiesSet();
+        container.start();
+        containers.put(shard, container);
+    }
+
+    public synchronized int getPrefetch(){
+        return prefetch;
+    }
+
+    //调整所有分片容器的prefetch，各分片逐个重启，同一时间每个分片最多一个消费者，没有签收的消息按原来的位置放回队列
+    public synchronized void setPrefetch(int prefetch){
+        this.prefetch = prefetch;
+        for (Map.Entry<Integer, SimpleMessageListenerContainer> entry : containers.entrySet()) {
+            prefetchRoller.update(orderShardRouter.shardQueue(entry.getKey()), entry.getValue(), prefetch);
+        }
+    }
+
+    //被移除的分片队列为空后停止消费并删除队列
+    private synchronized void checkDraining(){
+        for (Integer shard : new TreeSet<>(draining)) {
+            String queueName = orderShardRouter.shardQueue(shard);
+            try {
+                if(depth(queueName) > 0){
+                    continue;
+                }
+                SimpleMessageListenerContainer container = containers.get(shard);
+                if(container != null){
+                    //等待已经取到的消息处理完，没有签收的会回到队列
+                    prefetchRoller.stop(container);
+                }
+                try {
+                    //只删除空队列
+                    amqpAdmin.deleteQueue(queueName, false, true);
+                } catch (RuntimeException e) {
+                    //停止时有消息回到队列，继续消费，下次再检查
+                    if(container != null){
+                        prefetchRoller.start(container);
+                    }
+                    log.info("分片队列还有消息,继续排空: {}", queueName);
+                    continue;
+                }
+                containers.remove(shard);
+                draining.remove(shard);
+                log.info("订单分片已排空并删除: {}", queueName);
+            } catch (RuntimeException e) {
+                log.warn("检查分片排空失败: {}", queueName, e);
+            }
+        }
+    }
+
+    private long depth(String queue){
+        Properties properties = amqpAdmin.getQueueProperties(queue);
+        if(properties == null){
+            return 0;
+        }
+        Object count = properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    //解除暂停的用户，之后的消息正常处理；暂停期间进入死信队列的消息通过死信重放发回
+    public Map<String, Object> release(String key){
+        if(orderedListener == null){
+            throw new IllegalStateException("没有开启订单分片");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("key", key);
+        result.put("released", orderedListener.release(key));
+        return result;
+    }
+
+    public synchronized Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", orderShardRouter.isEnabled());
+        stats.put("shards", orderShardRouter.getShards());
+        stats.put("draining", new TreeSet<>(draining));
+        stats.put("parked", orderedListener == null ? new TreeSet<String>() : orderedListener.getParked());
+        Map<String, Object> queues = new LinkedHashMap<>();
+        for (Map.Entry<Integer, SimpleMessageListenerContainer> entry : containers.entrySet()) {
+            String queueName = orderShardRouter.shardQueue(entry.getKey());
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("depth", depth(queueName));
+            item.put("consumers", entry.getValue().getActiveConsumerCount());
+            queues.put(queueName, item);
+        }
+        stats.put("queues", queues);
+        return stats;
+    }
+}
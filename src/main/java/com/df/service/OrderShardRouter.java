@@ -0,0 +1,129 @@
+package com.df.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：订单消息按用户id的一致性hash分配到分片队列。每个分片在环上有多个虚拟节点，
+ * 分片数量变化时只有约1/N的用户换到别的分片，同一用户的消息始终进入同一个队列，由该队列唯一的消费者按顺序处理。
+ * 没有开启分片时使用原来的routingKey
+ */
+@Component
+public class OrderShardRouter {
+
+    @Value("${order_shard.enabled}")
+    private boolean ENABLED;
+    //每个分片在环上的虚拟节点数
+    @Value("${order_shard.virtual_nodes}")
+    private int VIRTUAL_NODES;
+    @Value("${order.queue_name}")
+    private String ORDER_QUEUE_NAME;
+    @Value("${order.routing_key_name}")
+    private String ORDER_ROUTING_KEY_NAME;
+
+    //分片数量变化时整体替换
+    private volatile Ring ring;
+
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public int getShards() {
+        Ring current = ring;
+        return current == null ? 0 : current.shards;
+    }
+
+    //切换到新的分片数量，之后发送的消息按新的环路由
+    public void resize(int shards){
+        ring = new Ring(shards, VIRTUAL_NODES);
+    }
+
+    public int shard(Object key){
+        return ring.route(hash(key));
+    }
+
+    //发送订单消息使用的routingKey
+    public String routingKey(Object key){
+        if(!ENABLED || ring == null || key == null){
+            return ORDER_ROUTING_KEY_NAME;
+        }
+        return shardRoutingKey(shard(key));
+    }
+
+    public String shardRoutingKey(int shard){
+        return ORDER_ROUTING_KEY_NAME + ".shard-" + shard;
+    }
+
+    //重发、重放使用发送时记录的routingKey，分片已经被移除时换到现有的分片，不会因为队列删除后没有绑定被退回
+    public String remap(String routingKey){
+        Ring current = ring;
+        String prefix = ORDER_ROUTING_KEY_NAME + ".shard-";
+        if(!ENABLED || current == null || routingKey == null || !routingKey.startsWith(prefix)){
+            return routingKey;
+        }
+        int shard;
+        try {
+            shard = Integer.parseInt(routingKey.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return routingKey;
+        }
+        return shard < current.shards ? routingKey : shardRoutingKey(shard % current.shards);
+    }
+
+    public String shardQueue(int shard){
+        return ORDER_QUEUE_NAME + ".shard-" + shard;
+    }
+
+    private static long hash(Object key){
+        return mix(key instanceof Number ? ((Number) key).longValue() : key.hashCode());
+    }
+
+    //splitmix64的混合函数，相邻的id也能均匀分布在环上
+    private static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static final class Ring {
+
+        private final int shards;
+
+        //按hash排序的虚拟节点和对应的分片
+        private final long[] points;
+
+        private final int[] owners;
+
+        private Ring(int shards, int virtualNodes){
+            this.shards = shards;
+            int size = shards * virtualNodes;
+            long[][] nodes = new long[size][];
+            for (int shard = 0; shard < shards; shard++) {
+                for (int v = 0; v < virtualNodes; v++) {
+                    nodes[shard * virtualNodes + v] = new long[]{mix(((long) shard << 32) | v), shard};
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+            points = new long[size];
+            owners = new int[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = nodes[i][0];
+                owners[i] = (int) nodes[i][1];
+            }
+        }
+
+        //顺时针方向第一个虚拟节点
+        private int route(long hash){
+            int index = Arrays.binarySearch(points, hash);
+            if(index < 0){
+                index = -index - 1;
+            }
+            return owners[index == points.length ? 0 : index];
+        }
+    }
+}
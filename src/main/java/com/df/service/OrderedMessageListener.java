@@ -0,0 +1,135 @@
+package com.df.service;
+
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：订单分片队列的顺序消费。处理失败时不转入延迟重试队列也不重新入队，两种方式都会让消息排到同一用户后面的消息之后；
+ * 在消费者线程上按退避时间原地重试，期间整个分片等待。重试次数用完后拒绝进入死信队列，并暂停(park)该用户，
+ * 之后同一用户的消息同样直接进入死信队列，在死信队列中保持原来的顺序，解除暂停后一起重放
+ */
+public class OrderedMessageListener implements ChannelAwareMessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderedMessageListener.class);
+
+    //从消息中取出分片使用的用户key，无法解析时返回null
+    public interface KeyExtractor {
+        Object key(Message message);
+    }
+
+    private final AsyncMessageListener.MessageHandler handler;
+
+    private final KeyExtractor keyExtractor;
+
+    private final int maxAttempts;
+
+    private final long backoff;
+
+    private final long maxBackoff;
+
+    private final RabbitMetrics rabbitMetrics;
+
+    private final LifecycleJournal journal;
+
+    //暂停中的用户key，多个分片容器共用
+    private final Set<String> parked = ConcurrentHashMap.newKeySet();
+
+    public OrderedMessageListener(AsyncMessageListener.MessageHandler handler, KeyExtractor keyExtractor,
+                                  int maxAttempts, long backoff, long maxBackoff,
+                                  RabbitMetrics rabbitMetrics, LifecycleJournal journal){
+        this.handler = handler;
+        this.keyExtractor = keyExtractor;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.rabbitMetrics = rabbitMetrics;
+        this.journal = journal;
+    }
+
+    @Override
+    public void onMessage(Message message, Channel channel) throws Exception {
+        MessageProperties properties = message.getMessageProperties();
+        //没有暂停的用户时不解析消息
+        if(!parked.isEmpty()){
+            String key = key(message);
+            if(key != null && parked.contains(key)){
+                log.warn("用户已暂停,消息进入死信队列, key: {}, id: {}", key, DeduplicatingMessageListener.correlationId(message));
+                reject(message, channel);
+                return;
+            }
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.handle(message);
+                channel.basicAck(properties.getDeliveryTag(), false);
+                rabbitMetrics.acked(properties.getConsumerQueue());
+                journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.ACKED,
+                        properties.getConsumerQueue(), properties.getDeliveryTag());
+                return;
+            } catch (Exception e) {
+                if(attempt >= maxAttempts){
+                    String key = key(message);
+                    if(key != null){
+                        parked.add(key);
+                    }
+                    log.error("分片消息重试{}次仍然失败,进入死信队列并暂停用户, key: {}, id: {}", attempt, key,
+                            DeduplicatingMessageListener.correlationId(message), e);
+                    reject(message, channel);
+                    return;
+                }
+                log.warn("分片消息处理失败,原地重试, 第{}次, id: {}", attempt, DeduplicatingMessageListener.correlationId(message), e);
+            }
+            try {
+                Thread.sleep(Math.min(maxBackoff, backoff << Math.min(attempt - 1, 20)));
+            } catch (InterruptedException e) {
+                //容器停止，放回队列原来的位置，由下一个消费者继续
+                Thread.currentThread().interrupt();
+                channel.basicReject(properties.getDeliveryTag(), true);
+                rabbitMetrics.rejected(properties.getConsumerQueue(), true);
+                journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.REJECTED,
+                        properties.getConsumerQueue(), 1);
+                return;
+            }
+        }
+    }
+
+    private void reject(Message message, Channel channel) throws Exception {
+        MessageProperties properties = message.getMessageProperties();
+        channel.basicReject(properties.getDeliveryTag(), false);
+        rabbitMetrics.rejected(properties.getConsumerQueue(), false);
+        journal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.REJECTED,
+                properties.getConsumerQueue(), 0);
+    }
+
+    private String key(Message message){
+        try {
+            Object key = keyExtractor.key(message);
+            return key == null ? null : key.toString();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public Set<String> getParked(){
+        return new TreeSet<>(parked);
+    }
+
+    //解除暂停，之后该用户的消息正常处理；已经进入死信队列的需要通过死信重放发回
+    public boolean release(String key){
+        return parked.remove(key);
+    }
+}
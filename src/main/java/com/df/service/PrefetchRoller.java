@@ -0,0 +1,66 @@
+package com.df.service;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：运行中修改容器的prefetch。已经建立的消费者不会更新basic.qos，新的prefetch通过setPrefetchCount设置后，
+ * 在后台停止再启动容器，重新建立的消费者使用新的prefetch。停止时等待正在处理的消息完成，预取但没有签收的消息由broker放回队列，
+ * 容器短暂不消费，调用方不用等待重启完成。
+ * 容器的启停也通过这里执行，和重启互斥，暂停中的容器不会被重启
+ */
+@Component
+public class PrefetchRoller {
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchRoller.class);
+
+    //重启按提交顺序逐个进行，同一时间只有一个容器停止
+    private final ExecutorService roller = Executors.newSingleThreadExecutor(new DefaultThreadFactory("prefetch-roller", true));
+
+    @PreDestroy
+    public void stop(){
+        roller.shutdownNow();
+    }
+
+    //新的prefetch在容器下次启动时生效，运行中的容器在后台重启
+    public void update(String name, SimpleMessageListenerContainer container, int prefetch){
+        container.setPrefetchCount(prefetch);
+        roller.execute(() -> {
+            try {
+                if(restart(container)){
+                    log.info("容器 {} 已按prefetch {} 重启", name, prefetch);
+                }
+            } catch (RuntimeException e) {
+                log.warn("容器 {} 重启失败", name, e);
+            }
+        });
+    }
+
+    public synchronized void start(SimpleMessageListenerContainer container){
+        container.start();
+    }
+
+    public synchronized void stop(SimpleMessageListenerContainer container){
+        container.stop();
+    }
+
+    private synchronized boolean restart(SimpleMessageListenerContainer container){
+        //没有运行的容器下次启动时使用新的prefetch
+        if(!container.isRunning()){
+            return false;
+        }
+        container.stop();
+        container.start();
+        return true;
+    }
+}
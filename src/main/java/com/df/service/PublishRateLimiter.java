@@ -0,0 +1,472 @@
+package com.df.service;
+
+import com.df.metrics.RabbitMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：集群共享的发送限速。每个exchange一个令牌桶放在redis中，所有实例共用；
+ * 实例每次用lua脚本租用一小段时间的令牌放在本地，发送时只扣本地令牌，本地快用完时后台再租，不会每条消息访问一次redis。
+ * 收到连接被broker阻塞(内存、磁盘告警)的通知时立即降到最低速率，confirm平均耗时超过阈值时按比例收紧，
+ * 恢复正常后逐步放开。每个实例的当前速率随租约请求写入桶中，补充令牌时取最近仍在上报的实例中最低的速率，
+ * 一个实例收紧后所有实例共同生效。redis不可用时按本地份额继续限速
+ */
+@Component
+public class PublishRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(PublishRateLimiter.class);
+
+    //先把本实例的速率写入桶中，删除超过ARGV[6]毫秒没有上报的实例，按剩下实例中最低的速率补充令牌后租出最多ARGV[3]个。
+    //时间取redis服务器时间，各实例的时钟不一致也不影响
+    //KEYS[1]为桶的key，ARGV为本实例速率(每秒)、桶容量为几秒的令牌、申请数量、桶的有效时间(ms)、实例id、速率上报的有效时间(ms)
+    private static final String LEASE =
+            "redis.replicate_commands() "
+            + "local rate = tonumber(ARGV[1]) "
+            + "local time = redis.call('time') "
+            + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) "
+            + "redis.call('hmset', KEYS[1], 'r:' .. ARGV[5], ARGV[1], 't:' .. ARGV[5], tostring(now)) "
+            + "local fields = redis.call('hgetall', KEYS[1]) "
+            + "local bucket = {} "
+            + "for i = 1, #fields, 2 do bucket[fields[i]] = fields[i + 1] end "
+            + "for name, value in pairs(bucket) do "
+            + "  if string.sub(name, 1, 2) == 'r:' then "
+            + "    local owner = string.sub(name, 3) "
+            + "    if now - (tonumber(bucket['t:' .. owner]) or 0) > tonumber(ARGV[6]) then "
+            + "      redis.call('hdel', KEYS[1], name, 't:' .. owner) "
+            + "    else "
+            + "      rate = math.min(rate, tonumber(value)) "
+            + "    end "
+            + "  end "
+            + "end "
+            + "local capacity = math.max(tonumber(ARGV[3]), rate * tonumber(ARGV[2])) "
+            + "local tokens = tonumber(bucket['tokens']) or capacity "
+            + "local ts = tonumber(bucket['ts']) or now "
+            + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000) "
+            + "local granted = math.min(tonumber(ARGV[3]), math.floor(tokens)) "
+            + "redis.call('hmset', KEYS[1], 'tokens', tostring(tokens - granted), 'ts', tostring(now)) "
+            + "redis.call('pexpire', KEYS[1], ARGV[4]) "
+            + "return granted";
+
+    //桶在没有租用后保留的时间(ms)，过期后重新从满桶开始
+    private static final long BUCKET_TTL = 60000;
+
+    //写入桶中的实例id，区分各实例上报的速率
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${publish_limit.enabled}")
+    private boolean ENABLED;
+    @Value("${publish_limit.key}")
+    private String KEY;
+    //每个exchange的集群总速率(每秒)，格式为exchange=速率，多个用逗号分隔
+    @Value("${publish_limit.budgets}")
+    private String BUDGETS;
+    //没有单独配置的exchange的速率，0为不限速
+    @Value("${publish_limit.default_rate}")
+    private double DEFAULT_RATE;
+    //桶的容量为几秒的令牌
+    @Value("${publish_limit.burst}")
+    private double BURST;
+    //一次租用多少毫秒的令牌
+    @Value("${publish_limit.lease_millis}")
+    private long LEASE_MILLIS;
+    //发送时等待令牌的最长时间(ms)
+    @Value("${publish_limit.max_wait}")
+    private long MAX_WAIT;
+    //redis不可用时每个实例按集群速率的这个比例在本地限速
+    @Value("${publish_limit.fallback_share}")
+    private double FALLBACK_SHARE;
+    //检查confirm耗时的间隔(ms)
+    @Value("${publish_limit.adjust_interval}")
+    private long ADJUST_INTERVAL;
+    //confirm平均耗时超过这个值(ms)时收紧
+    @Value("${publish_limit.latency_threshold}")
+    private double LATENCY_THRESHOLD;
+    //每次收紧乘以的比例
+    @Value("${publish_limit.decrease}")
+    private double DECREASE;
+    //每次恢复增加的比例
+    @Value("${publish_limit.increase}")
+    private double INCREASE;
+    //最多收紧到配置速率的这个比例
+    @Value("${publish_limit.min_factor}")
+    private double MIN_FACTOR;
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    //被broker阻塞的连接，发送和消费连接都算
+    private final Set<Connection> blockedConnections = ConcurrentHashMap.newKeySet();
+
+    //租用令牌和调整速率都在这个线程上进行
+    private ScheduledExecutorService leaser;
+
+    //当前速率占配置速率的比例
+    private volatile double factor = 1D;
+
+    private volatile double confirmMillis;
+
+    private volatile boolean redisAvailable = true;
+
+    private volatile String lastDecision = "none";
+
+    //上一次检查时confirm耗时的总数
+    private long lastConfirmCount;
+    private long lastConfirmNanos;
+
+    @PostConstruct
+    public void init(){
+        if(!ENABLED){
+            return;
+        }
+        Gauge.builder("rabbit_publish_rate_factor", () -> factor).description("发送限速当前占配置速率的比例").register(meterRegistry);
+        leaser = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("publish-limit", true));
+        if(StringUtils.hasText(BUDGETS)){
+            for (String item : BUDGETS.split(",")) {
+                item = item.trim();
+                int split = item.lastIndexOf('=');
+                if(split <= 0 || split == item.length() - 1){
+                    throw new IllegalArgumentException("发送限速格式为exchange=每秒速率: " + item);
+                }
+                String exchange = item.substring(0, split).trim();
+                budgets.put(exchange, newBudget(exchange, Double.parseDouble(item.substring(split + 1).trim())));
+            }
+        }
+        leaser.scheduleWithFixedDelay(this::adjustSafely, ADJUST_INTERVAL, ADJUST_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop(){
+        if(leaser != null){
+            leaser.shutdownNow();
+        }
+    }
+
+    //不等待，本地令牌不够时返回false
+    public boolean tryAcquire(String exchange, int permits){
+        Budget budget = budget(exchange);
+        if(budget == null || budget.tryAcquire(permits)){
+            return true;
+        }
+        rabbitMetrics.publishLimited(exchange);
+        return false;
+    }
+
+    //等待令牌，超过max_wait仍然不够时返回false
+    public boolean acquire(String exchange, int permits){
+        Budget budget = budget(exchange);
+        if(budget == null || budget.acquire(permits, TimeUnit.MILLISECONDS.toNanos(MAX_WAIT))){
+            return true;
+        }
+        rabbitMetrics.publishLimited(exchange);
+        return false;
+    }
+
+    private Budget budget(String exchange){
+        if(!ENABLED){
+            return null;
+        }
+        Budget budget = budgets.get(exchange);
+        if(budget == null && DEFAULT_RATE > 0){
+            budget = budgets.computeIfAbsent(exchange, key -> newBudget(key, DEFAULT_RATE));
+        }
+        return budget;
+    }
+
+    //创建时先同步租用一次，第一条消息不会因为本地还没有令牌被拒绝
+    private Budget newBudget(String exchange, double rate){
+        Budget budget = new Budget(exchange, rate);
+        Gauge.builder("rabbit_publish_local_tokens", () -> budget.tokens)
+                .description("本地租用还没有使用的令牌数").tag("exchange", exchange).register(meterRegistry);
+        budget.leasing = true;
+        lease(budget);
+        return budget;
+    }
+
+    @EventListener
+    public void onBlocked(ConnectionBlockedEvent event){
+        blockedConnections.add(event.getConnection());
+        if(ENABLED){
+            tighten(MIN_FACTOR, "连接被broker阻塞: " + event.getReason());
+        }
+    }
+
+    @EventListener
+    public void onUnblocked(ConnectionUnblockedEvent event){
+        blockedConnections.remove(event.getConnection());
+        //解除后随confirm耗时逐步恢复
+        log.info("连接解除阻塞，发送限速逐步恢复");
+    }
+
+    private void adjustSafely(){
+        try {
+            adjust();
+        } catch (Exception e) {
+            log.warn("发送限速调整失败", e);
+        }
+    }
+
+    //按两次检查之间confirm的平均耗时收紧或放开，阻塞期间保持最低速率
+    private synchronized void adjust(){
+        double before = factor;
+        long count = 0;
+        long nanos = 0;
+        for (Timer timer : rabbitMetrics.confirmLatency().getMeters().values()) {
+            count += timer.count();
+            nanos += (long) timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long confirms = count - lastConfirmCount;
+        double millis = confirms == 0 ? 0 : (nanos - lastConfirmNanos) / 1e6 / confirms;
+        lastConfirmCount = count;
+        lastConfirmNanos = nanos;
+        confirmMillis = millis;
+        if(!blockedConnections.isEmpty()){
+            tighten(MIN_FACTOR, "连接仍被broker阻塞");
+        }else if(millis > LATENCY_THRESHOLD){
+            tighten(Math.max(MIN_FACTOR, factor * DECREASE), String.format("confirm平均耗时%.1fms", millis));
+        }else if(factor < 1D){
+            factor = Math.min(1D, factor + INCREASE);
+            lastDecision = String.format("恢复到%.0f%%", factor * 100);
+        }
+        //没有发送、不租用令牌时也要上报，收紧期间其他实例继续按这个速率
+        if(factor < 1D || factor != before){
+            for (Budget budget : budgets.values()) {
+                try {
+                    eval(budget, budget.rate * factor, 0);
+                } catch (Exception e) {
+                    //redis不可用时由租用流程记录并切换到本地份额
+                    log.debug("发送限速上报速率失败: {}", budget.exchange, e);
+                }
+            }
+        }
+    }
+
+    //收紧时丢掉本地多租的令牌，下一次租用按新的速率
+    private synchronized void tighten(double target, String reason){
+        if(target >= factor){
+            return;
+        }
+        log.warn("发送限速收紧 {}% -> {}%, {}", Math.round(factor * 100), Math.round(target * 100), reason);
+        factor = target;
+        lastDecision = reason;
+        for (Budget budget : budgets.values()) {
+            budget.trim();
+        }
+    }
+
+    private void lease(Budget budget){
+        double rate = budget.rate * factor;
+        int size = budget.leaseSize();
+        long granted;
+        try {
+            granted = eval(budget, rate, size);
+            if(!redisAvailable){
+                redisAvailable = true;
+                log.info("发送限速恢复使用redis中的令牌桶");
+            }
+        } catch (Exception e) {
+            if(redisAvailable){
+                redisAvailable = false;
+                log.warn("发送限速无法访问redis，按本地份额限速", e);
+            }
+            budget.fallback.setRate(Math.max(1D, rate * FALLBACK_SHARE), size);
+            granted = budget.fallback.tryAcquire(size) ? size : 0;
+            budget.fallbackLeases++;
+        }
+        budget.leased(granted, size, rate);
+    }
+
+    //上报本实例速率并租用size个令牌，size为0时只上报
+    private long eval(Budget budget, double rate, int size){
+        Long count = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, LEASE,
+                RScript.ReturnType.INTEGER, Collections.singletonList(KEY + ":" + budget.exchange),
+                String.valueOf(rate), String.valueOf(BURST), String.valueOf(size), String.valueOf(BUCKET_TTL),
+                instanceId, String.valueOf(ADJUST_INTERVAL * 3));
+        return count == null ? 0 : count;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("factor", factor);
+        stats.put("blockedConnections", blockedConnections.size());
+        stats.put("confirmMillis", confirmMillis);
+        stats.put("latencyThreshold", LATENCY_THRESHOLD);
+        stats.put("redisAvailable", redisAvailable);
+        stats.put("lastDecision", lastDecision);
+        for (Budget budget : budgets.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("rate", budget.rate);
+            item.put("effectiveRate", budget.rate * factor);
+            item.put("leaseSize", budget.leaseSize());
+            item.put("localTokens", budget.tokens);
+            item.put("leases", budget.leases);
+            item.put("leasedTokens", budget.leasedTokens);
+            item.put("fallbackLeases", budget.fallbackLeases);
+            stats.put(budget.exchange, item);
+        }
+        return stats;
+    }
+
+    private final class Budget {
+
+        private final String exchange;
+
+        //配置的集群总速率
+        private final double rate;
+
+        //redis不可用时使用
+        private final TokenBucket fallback;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition refilled = lock.newCondition();
+
+        //本地可用令牌，在锁内修改
+        private volatile long tokens;
+
+        //已经有租用请求在进行
+        private boolean leasing;
+
+        //以下只在租用线程上修改
+        private volatile long leases;
+        private volatile long leasedTokens;
+        private volatile long fallbackLeases;
+
+        private Budget(String exchange, double rate){
+            this.exchange = exchange;
+            this.rate = rate;
+            this.fallback = new TokenBucket(Math.max(1D, rate * FALLBACK_SHARE), Math.max(1D, rate * FALLBACK_SHARE));
+        }
+
+        //一次租用lease_millis内按当前速率可以发送的数量
+        private int leaseSize(){
+            return (int) Math.max(1, Math.ceil(rate * factor * LEASE_MILLIS / 1000D));
+        }
+
+        private boolean tryAcquire(int permits){
+            lock.lock();
+            try {
+                boolean acquired = tokens >= permits;
+                if(acquired){
+                    tokens -= permits;
+                }
+                requestLease();
+                return acquired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean acquire(int permits, long timeoutNanos){
+            long deadline = System.nanoTime() + timeoutNanos;
+            lock.lock();
+            try {
+                while (tokens < permits) {
+                    requestLease();
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        return false;
+                    }
+                    refilled.awaitNanos(remaining);
+                }
+                tokens -= permits;
+                requestLease();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        //本地令牌少于半次租用量时在后台续租，调用时持有锁
+        private void requestLease(){
+            if(leasing || tokens * 2 >= leaseSize()){
+                return;
+            }
+            leasing = true;
+            try {
+                leaser.execute(() -> lease(this));
+            } catch (RejectedExecutionException e) {
+                //正在关闭
+                leasing = false;
+            }
+        }
+
+        //租用完成，没有租满说明集群令牌不够，按补满需要的时间再租
+        private void leased(long granted, int size, double rate){
+            lock.lock();
+            try {
+                leases++;
+                leasedTokens += granted;
+                tokens += granted;
+                if(granted > 0){
+                    refilled.signalAll();
+                }
+                if(granted >= size || tokens * 2 >= leaseSize()){
+                    leasing = false;
+                    return;
+                }
+                long delay = Math.max(1, (long) Math.ceil((size - granted) * 1000D / Math.max(rate, 1D)));
+                try {
+                    leaser.schedule(() -> lease(this), Math.min(delay, LEASE_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    leasing = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void trim(){
+            lock.lock();
+            try {
+                tokens = Math.min(tokens, leaseSize());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.df.service;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：不能重放的死信消息隔离存储，追加写入本地文件。每条记录：
+ * 写入时间 | 消息id | 原交换机 | 原routingKey | 原因 | content_type | body
+ */
+@Component
+public class QuarantineStore {
+
+    @Value("${replay.quarantine_file}")
+    private String FILE;
+
+    private FileOutputStream file;
+
+    private DataOutputStream out;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    @PostConstruct
+    public void open() throws IOException {
+        File file = new File(FILE);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(!parent.isDirectory() && !parent.mkdirs()){
+            throw new IOException("无法创建隔离目录: " + parent);
+        }
+        this.file = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(this.file, 64 * 1024));
+        bytes.set(file.length());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    //写入一批隔离消息后统一刷盘
+    public synchronized void write(Iterable<Quarantined> records) throws IOException {
+        for (Quarantined record : records) {
+            Message message = record.message;
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(nullToEmpty(record.id));
+            out.writeUTF(nullToEmpty(record.exchange));
+            out.writeUTF(nullToEmpty(record.routingKey));
+            out.writeUTF(nullToEmpty(record.reason));
+            out.writeUTF(nullToEmpty(message.getMessageProperties().getContentType()));
+            out.writeInt(message.getBody().length);
+            out.write(message.getBody());
+            count.incrementAndGet();
+        }
+        out.flush();
+        bytes.set(file.getChannel().size());
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    public long getBytes(){
+        return bytes.get();
+    }
+
+    private static String nullToEmpty(String value){
+        return value == null ? "" : value;
+    }
+
+    public static class Quarantined {
+
+        private final String id;
+        private final String exchange;
+        private final String routingKey;
+        private final String reason;
+        private final Message message;
+
+        public Quarantined(String id, String exchange, String routingKey, String reason, Message message) {
+            this.id = id;
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.reason = reason;
+            this.message = message;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package com.df.service;
 
 import com.df.config.RabbitmqConfirm;
+import com.df.entity.ContainerSettings;
 import com.df.entity.User;
+import com.df.journal.JournalingMessageListener;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
 import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
@@ -13,11 +22,19 @@ import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * @author Lin
@@ -28,6 +45,8 @@ import java.util.UUID;
 @Component
 public class ReceiveMessage {
 
+    private static final Logger log = LoggerFactory.getLogger(ReceiveMessage.class);
+
 //    @RabbitListener(queues = "${order.queue_name}")
 //    @RabbitHandler
 //    public void receiveMessage(User user){
@@ -39,6 +58,89 @@ public class ReceiveMessage {
     @Autowired
     RabbitmqConfirm rabbitmqConfirm;
 
+    @Autowired
+    IdempotencyCache idempotencyCache;
+
+    @Autowired
+    ConsumerRetryCounter consumerRetryCounter;
+
+    //消费失败后的延迟重试
+    @Autowired
+    DelayedRetryRouter delayedRetryRouter;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @Autowired
+    ConsumerAutoscaler consumerAutoscaler;
+
+    //是否批量消费
+    @Value("${listener.batch_enabled}")
+    private boolean BATCH_ENABLED;
+    //每批最多的消息数
+    @Value("${listener.batch_size}")
+    private volatile int BATCH_SIZE;
+    //攒批的最长等待时间(ms)
+    @Value("${listener.batch_window}")
+    private long BATCH_WINDOW;
+    //是否异步消费，开启后优先于批量消费
+    @Value("${listener.async_enabled}")
+    private boolean ASYNC_ENABLED;
+    //异步消费的工作线程数
+    @Value("${listener.async_workers}")
+    private int ASYNC_WORKERS;
+    //每个channel同时处理的消息数上限
+    @Value("${listener.async_max_in_flight}")
+    private int ASYNC_MAX_IN_FLIGHT;
+
+    //两个订单队列各自的权重、消费者数量和prefetch
+    @Value("${lanes.order.weight}")
+    private int ORDER_WEIGHT;
+    //异步消费时最多占用的工作线程数，0为不限制
+    @Value("${lanes.order.max_workers}")
+    private int ORDER_MAX_WORKERS;
+    @Value("${lanes.order.consumers}")
+    private int ORDER_CONSUMERS;
+    @Value("${lanes.order.max_consumers}")
+    private int ORDER_MAX_CONSUMERS;
+    @Value("${lanes.order.prefetch}")
+    private int ORDER_PREFETCH;
+    @Value("${lanes.order1.weight}")
+    private int ORDER1_WEIGHT;
+    @Value("${lanes.order1.max_workers}")
+    private int ORDER1_MAX_WORKERS;
+    @Value("${lanes.order1.consumers}")
+    private int ORDER1_CONSUMERS;
+    @Value("${lanes.order1.max_consumers}")
+    private int ORDER1_MAX_CONSUMERS;
+    @Value("${lanes.order1.prefetch}")
+    private int ORDER1_PREFETCH;
+
+    //异步消费的工作线程，两个订单队列按权重共用
+    private WeightedFairExecutor orderWorkers;
+
+    //批量消费时各容器的监听器，运行时调整batch_size
+    private final List<BatchMessageListener> batchListeners = new CopyOnWriteArrayList<>();
+
+    //创建时各容器的消费者数量和prefetch，bean名 -> 设置
+    private final Map<String, ContainerSettings> containerSettings = new ConcurrentHashMap<>();
+
+    @Autowired
+    DeadLetterReplayer deadLetterReplayer;
+
+    //死信重放每批的消息数
+    @Value("${replay.batch_size}")
+    private int REPLAY_BATCH_SIZE;
+    //启动时是否直接开始重放死信
+    @Value("${replay.auto_start}")
+    private boolean REPLAY_AUTO_START;
+
     //监听的队列
     @Resource
     Queue orderQueue;
@@ -50,91 +152,220 @@ public class ReceiveMessage {
     @Resource
     Queue queueDead;
 
-    //正常的消息处理监听逻辑
+    //正常的消息处理监听逻辑，订单队列和order1队列各用一个容器，消费者和prefetch分开设置，一个队列积压不会占满另一个的消费者
     @Bean
     public SimpleMessageListenerContainer messageContainer(ConnectionFactory connectionFactory){
+        SimpleMessageListenerContainer container = laneContainer(connectionFactory, orderQueue,
+                ORDER_WEIGHT, ORDER_MAX_WORKERS, ORDER_PREFETCH);
+        if(consumerAutoscaler.isEnabled()){
+            //消费者数量由autoscaler按负载调整，并发数和最大并发数相同，关闭容器自带的扩缩容
+            container.setConcurrentConsumers(consumerAutoscaler.getConsumers());
+            container.setMaxConcurrentConsumers(consumerAutoscaler.getConsumers());
+            //初始prefetch同样由autoscaler决定，批量消费时不小于batch_size
+            container.setPrefetchCount(consumerAutoscaler.getPrefetch());
+            record("messageContainer", consumerAutoscaler.getConsumers(), consumerAutoscaler.getConsumers(), consumerAutoscaler.getPrefetch());
+        }else{
+            //设置一个队列默认有几个消费者
+            container.setConcurrentConsumers(ORDER_CONSUMERS);
+            //设置一个队列能最大支持几个消费者  比如别的地方监听该队列
+            container.setMaxConcurrentConsumers(ORDER_MAX_CONSUMERS);
+            record("messageContainer", ORDER_CONSUMERS, ORDER_MAX_CONSUMERS, lanePrefetch(ORDER_PREFETCH));
+        }
+        return container;
+    }
+
+    //order1队列的监听，不参与自动调整
+    @Bean
+    public SimpleMessageListenerContainer order1Container(ConnectionFactory connectionFactory){
+        SimpleMessageListenerContainer container = laneContainer(connectionFactory, order1Queue,
+                ORDER1_WEIGHT, ORDER1_MAX_WORKERS, ORDER1_PREFETCH);
+        container.setConcurrentConsumers(ORDER1_CONSUMERS);
+        container.setMaxConcurrentConsumers(ORDER1_MAX_CONSUMERS);
+        record("order1Container", ORDER1_CONSUMERS, ORDER1_MAX_CONSUMERS, lanePrefetch(ORDER1_PREFETCH));
+        return container;
+    }
+
+    private SimpleMessageListenerContainer laneContainer(ConnectionFactory connectionFactory, Queue queue,
+                                                        int weight, int maxWorkers, int prefetch){
         SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
-        container.setQueues(orderQueue, order1Queue);
-        //设置一个队列默认有几个消费者
-        container.setConcurrentConsumers(3);
-        //设置一个队列能最大支持几个消费者  比如别的地方监听该队列
-        container.setMaxConcurrentConsumers(5);
+        container.setQueues(queue);
         //是否有重复队列
         //container.setDefaultRequeueRejected(false);
-        //设置每个channel 每次的接收的消息为10个  默认250
-        container.setPrefetchCount(10);
+        //设置每个channel 每次的接收的消息数  默认250
+        container.setPrefetchCount(prefetch);
 
         //设置签收模式，自动签收 AUTO为系统根据处理情况自动签收 MANUAL为手动确认
         container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         //设置消费者标签
-        container.setConsumerTagStrategy(queue -> queue + "_" + UUID.randomUUID().toString());
-        //设置默认消息监听
-        container.setMessageListener(new ChannelAwareMessageListener() {
-            @Override
-            public void onMessage(Message message, Channel channel) throws Exception {
-                //假象逻辑：可以通过redisson进行次数的判断，再尝试次数之内如果无法处理则加入死信队列，不然重新尝试
-                MessageProperties messageProperties = message.getMessageProperties();
-                try {
-                    byte[] body = message.getBody();
-                    User user = (User) rabbitmqConfirm.convertToEntity(body);
-                    System.out.println("消费者id: " + message.getMessageProperties().getConsumerTag());
-                    System.out.println(message.getMessageProperties().getHeaders().get("spring_returned_message_correlation"));
-                    System.out.println("消费者获取数据: " + user);
-                    int c = 1 / 0;
-                    //通过Tag单个确认  deliveryTag为channel消息的标识，每次发送刷新 ， true代表批量确认同一批次的信息接收成功，为false时代表单独判定某个消息接收成功
-                    channel.basicAck(messageProperties.getDeliveryTag(), false);
-                }catch (Exception e){
-                    //通过tag为该消息进行标识，true为拒绝的消息重新进入队列， false为拒绝后不再进入队列
-                    //如果为false，则会进入死信队列， 如果为true则会重新回到队列
-                    channel.basicReject(messageProperties.getDeliveryTag(), false);
+        container.setConsumerTagStrategy(consumerQueue -> consumerQueue + "_" + UUID.randomUUID().toString());
+        ChannelAwareMessageListener listener;
+        if(ASYNC_ENABLED){
+            //异步消费，消费者线程只负责分发，prefetch至少要能填满每个channel的处理上限
+            container.setPrefetchCount(lanePrefetch(prefetch));
+            WeightedFairExecutor workers = workers();
+            Executor lane = workers.lane(queue.getName(), weight, maxWorkers);
+            Gauge.builder("rabbit_lane_queued", () -> workers.queued(lane)).description("异步消费等待工作线程的消息数")
+                    .tag("queue", queue.getName()).register(meterRegistry);
+            listener = new DeduplicatingMessageListener(new AsyncMessageListener(this::handleOrder,
+                    delayedRetryRouter::decide, lane, ASYNC_MAX_IN_FLIGHT, rabbitMetrics, lifecycleJournal),
+                    idempotencyCache, lifecycleJournal);
+        }else if(BATCH_ENABLED){
+            //批量消费，整批处理成功后一次签收，prefetch至少要能容纳一批
+            container.setPrefetchCount(lanePrefetch(prefetch));
+            BatchMessageListener batchListener = new BatchMessageListener(messages -> {
+                for (Message message : messages) {
+                    handleOrder(message);
+                }
+            }, delayedRetryRouter::decide, BATCH_SIZE, BATCH_WINDOW, rabbitMetrics, lifecycleJournal);
+            batchListeners.add(batchListener);
+            listener = new DeduplicatingMessageListener(batchListener, idempotencyCache, lifecycleJournal);
+        }else{
+            //设置默认消息监听，重复的消息在前面直接签收
+            listener = new DeduplicatingMessageListener(new ChannelAwareMessageListener() {
+                @Override
+                public void onMessage(Message message, Channel channel) throws Exception {
+                    //通过失败次数判断，尝试次数之内重新入队，超过后加入死信队列
+                    MessageProperties messageProperties = message.getMessageProperties();
+                    try {
+                        log.debug("消费者id: {}", messageProperties.getConsumerTag());
+                        handleOrder(message);
+                        //通过Tag单个确认  deliveryTag为channel消息的标识，每次发送刷新 ， true代表批量确认同一批次的信息接收成功，为false时代表单独判定某个消息接收成功
+                        channel.basicAck(messageProperties.getDeliveryTag(), false);
+                        rabbitMetrics.acked(messageProperties.getConsumerQueue());
+                        lifecycleJournal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.ACKED,
+                                messageProperties.getConsumerQueue(), messageProperties.getDeliveryTag());
+                    }catch (Exception e){
+                        //先尝试转入延迟重试队列，成功后签收原消息
+                        BatchMessageListener.Disposition disposition = delayedRetryRouter.decide(message);
+                        if(disposition == BatchMessageListener.Disposition.DELAYED){
+                            channel.basicAck(messageProperties.getDeliveryTag(), false);
+                            rabbitMetrics.acked(messageProperties.getConsumerQueue());
+                            lifecycleJournal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.ACKED,
+                                    messageProperties.getConsumerQueue(), messageProperties.getDeliveryTag());
+                            return;
+                        }
+                        //通过tag为该消息进行标识，true为拒绝的消息重新进入队列， false为拒绝后不再进入队列
+                        //如果为false，则会进入死信队列， 如果为true则会重新回到队列
+                        boolean requeue = disposition == BatchMessageListener.Disposition.REQUEUE;
+                        channel.basicReject(messageProperties.getDeliveryTag(), requeue);
+                        rabbitMetrics.rejected(messageProperties.getConsumerQueue(), requeue);
+                        lifecycleJournal.record(DeduplicatingMessageListener.correlationId(message), LifecycleEvent.REJECTED,
+                                messageProperties.getConsumerQueue(), requeue ? 1 : 0);
+                    }
                 }
-                Thread.sleep(1000);
-            }
-        });
+            }, idempotencyCache, lifecycleJournal);
+        }
+        //最外层记录投递事件
+        container.setMessageListener(new JournalingMessageListener(listener, lifecycleJournal, LifecycleEvent.DELIVERED));
         return container;
     }
 
-
-    //死信队列监听处理逻辑
-    @Bean
-    public SimpleMessageListenerContainer DeadMessageContainer(ConnectionFactory connectionFactory){
-        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
-        container.setQueues(queueDead);
-        container.setConcurrentConsumers(1);
-        container.setMaxConcurrentConsumers(3);
-        container.setAcknowledgeMode(AcknowledgeMode.AUTO);
-        container.setConsumerTagStrategy(queue -> queue + "_" + UUID.randomUUID().toString());
-        container.setMessageListener(new ChannelAwareMessageListener() {
-            @Override
-            public void onMessage(Message message, Channel channel) throws Exception {
-                byte[] body = message.getBody();
-                User user = (User) rabbitmqConfirm.convertToEntity(body);
-                System.out.println("死信队列消息id: " + message.getMessageProperties().getHeaders().get("spring_returned_message_correlation"));
-                System.out.println("死信队列获取数据: " + user);
-
-                //后续对死信队列的数据的处理逻辑...
-            }
-        });
-        return container;
+    //异步消费时不小于每个channel的处理上限，批量消费时不小于batch_size
+    private int lanePrefetch(int prefetch){
+        if(ASYNC_ENABLED){
+            return Math.max(prefetch, ASYNC_MAX_IN_FLIGHT);
+        }
+        return BATCH_ENABLED ? Math.max(prefetch, BATCH_SIZE) : prefetch;
     }
-}
-
-
-
-
-
-
-
 
+    private void record(String name, int consumers, int maxConsumers, int prefetch){
+        containerSettings.put(name, new ContainerSettings(consumers, maxConsumers, prefetch));
+    }
 
+    //创建时的设置，之后的调整由RuntimeTuner记录
+    public ContainerSettings containerSettings(String name){
+        return containerSettings.get(name);
+    }
 
+    //容器停止后再关闭，正在处理的消息没有签收的由broker重新投递
+    @PreDestroy
+    public void shutdownWorkers(){
+        if(orderWorkers != null){
+            orderWorkers.shutdown();
+        }
+    }
 
+    //两个容器共用一组工作线程，创建第一个容器时建立
+    private WeightedFairExecutor workers(){
+        if(orderWorkers == null){
+            orderWorkers = new WeightedFairExecutor("order-worker", ASYNC_WORKERS);
+        }
+        return orderWorkers;
+    }
 
+    //是否按批量签收的方式消费，异步消费开启时不生效
+    public boolean isBatchListening(){
+        return BATCH_ENABLED && !ASYNC_ENABLED;
+    }
 
+    public int getBatchSize(){
+        return BATCH_SIZE;
+    }
 
+    //正在攒的批次按新的数量判断，调用方需要保证各容器的prefetch不小于新的数量
+    public void setBatchSize(int batchSize){
+        BATCH_SIZE = batchSize;
+        for (BatchMessageListener batchListener : batchListeners) {
+            batchListener.setBatchSize(batchSize);
+        }
+    }
 
+    //异步消费时各队列的排队和线程占用情况
+    public Map<String, Object> laneStats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("async", ASYNC_ENABLED);
+        if(orderWorkers != null){
+            stats.putAll(orderWorkers.stats());
+        }
+        return stats;
+    }
 
+    //订单分片队列使用的处理逻辑，失败后的去向由OrderedMessageListener决定，不经过延迟重试
+    public AsyncMessageListener.MessageHandler orderHandler(){
+        return this::handleOrder;
+    }
 
+    //分片使用的用户key，和发送时OrderShardRouter.routingKey的参数一致
+    public Object orderKey(Message message){
+        User user = (User) rabbitmqConfirm.convertToEntity(message);
+        return user == null ? null : user.getId();
+    }
 
+    //订单消息的处理逻辑，无法解析的消息抛出异常进入死信队列
+    //批量失败二分重试时同一条消息会再次进入，已经成功的直接跳过
+    private void handleOrder(Message message){
+        String correlationId = DeduplicatingMessageListener.correlationId(message);
+        if(idempotencyCache.isProcessedLocally(correlationId)){
+            return;
+        }
+        long start = System.nanoTime();
+        User user = (User) rabbitmqConfirm.convertToEntity(message);
+        if(user == null){
+            throw new IllegalArgumentException("无法解析的消息");
+        }
+        log.debug("消费者获取数据: {}", user);
+        idempotencyCache.markProcessed(correlationId);
+        consumerRetryCounter.clear(correlationId);
+        rabbitMetrics.consumed(message.getMessageProperties().getConsumerQueue(), System.nanoTime() - start);
+    }
 
 
+    //死信队列监听处理逻辑，默认不启动，由重放管理接口启动或暂停
+    @Bean
+    public SimpleMessageListenerContainer DeadMessageContainer(ConnectionFactory connectionFactory){
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueues(queueDead);
+        container.setConcurrentConsumers(1);
+        container.setMaxConcurrentConsumers(3);
+        container.setAutoStartup(REPLAY_AUTO_START);
+        container.setPrefetchCount(REPLAY_BATCH_SIZE);
+        record("DeadMessageContainer", 1, 3, REPLAY_BATCH_SIZE);
+        //整批重放或隔离后再签收
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        container.setConsumerTagStrategy(queue -> queue + "_" + UUID.randomUUID().toString());
+        container.setMessageListener(new JournalingMessageListener(new BatchMessageListener(deadLetterReplayer::replay,
+                deadLetterReplayer::decide, REPLAY_BATCH_SIZE, BATCH_WINDOW, rabbitMetrics, lifecycleJournal),
+                lifecycleJournal, LifecycleEvent.DEAD_LETTERED));
+        return container;
+    }
+}
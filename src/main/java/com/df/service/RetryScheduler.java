@@ -0,0 +1,208 @@
+package com.df.service;
+
+import com.df.config.PublisherPool;
+import com.df.entity.PublishCorrelation;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.df.outbox.MessageOutbox;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：nack消息的重发调度。按指数退避加随机抖动延迟，由时间轮到期后放入待发送队列，
+ * 独立线程在自己的channel上批量重发，超过次数上限的消息放弃
+ */
+@Component
+public class RetryScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+
+    @Autowired
+    PublisherPool publisherPool;
+
+    @Autowired
+    ConfirmTracker confirmTracker;
+
+    @Autowired
+    MessageOutbox messageOutbox;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @Autowired
+    OrderShardRouter orderShardRouter;
+
+    //每条消息最多重发次数
+    @Value("${retry.max_attempts}")
+    private int MAX_ATTEMPTS;
+    //第一次重发的延迟(ms)
+    @Value("${retry.initial_interval}")
+    private long INITIAL_INTERVAL;
+    @Value("${retry.multiplier}")
+    private double MULTIPLIER;
+    @Value("${retry.max_interval}")
+    private long MAX_INTERVAL;
+    //延迟随机减少的比例 0~1，避免同一时间失败的消息同时重发
+    @Value("${retry.jitter}")
+    private double JITTER;
+    //每批最多重发的消息数
+    @Value("${retry.batch_size}")
+    private int BATCH_SIZE;
+    //时间轮每格的时长(ms)
+    @Value("${retry.tick}")
+    private long TICK;
+
+    private HashedWheelTimer timer;
+
+    private ExecutorService sender;
+
+    //到期等待重发的消息
+    private final LinkedBlockingQueue<PublishCorrelation> ready = new LinkedBlockingQueue<>();
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start(){
+        timer = new HashedWheelTimer(new DefaultThreadFactory("retry-timer", true), TICK, TimeUnit.MILLISECONDS, 512);
+        sender = Executors.newSingleThreadExecutor(new DefaultThreadFactory("retry-sender", true));
+        running = true;
+        sender.execute(this::sendLoop);
+        Gauge.builder("rabbit_retry_pending", () -> timer.pendingTimeouts() + ready.size())
+                .description("等待重发的消息数量").register(meterRegistry);
+        Gauge.builder("rabbit_confirm_in_flight", confirmTracker::inFlightCount)
+                .description("已发送还没有收到confirm的消息数量").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop(){
+        running = false;
+        timer.stop();
+        sender.shutdownNow();
+    }
+
+    //登记一次失败并安排重发，超过次数上限返回false
+    public boolean retry(PublishCorrelation correlation){
+        String id = correlation.getId();
+        int attempt = confirmTracker.failed(id);
+        if(attempt > MAX_ATTEMPTS){
+            confirmTracker.abandon(id);
+            messageOutbox.done(correlation);
+            rabbitMetrics.retryAbandoned().increment();
+            log.warn("重发次数超过上限,丢弃数据, id: {}", id);
+            return false;
+        }
+        rabbitMetrics.retryScheduled().increment();
+        timer.newTimeout(timeout -> ready.offer(correlation), delay(attempt), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    //第n次重发的延迟 = min(initial * multiplier^(n-1), max) 再随机减少最多jitter比例
+    long delay(int attempt){
+        double backoff = Math.min(INITIAL_INTERVAL * Math.pow(MULTIPLIER, attempt - 1), MAX_INTERVAL);
+        return (long) (backoff * (1 - JITTER * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private void sendLoop(){
+        List<PublishCorrelation> batch = new ArrayList<>(BATCH_SIZE);
+        //本批下一条要发送的位置，异常时从这里开始重新排队
+        int[] next = {0};
+        while (running) {
+            try {
+                batch.add(ready.take());
+                ready.drainTo(batch, BATCH_SIZE - 1);
+                next[0] = 0;
+                sendBatch(batch, next);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("重发批次异常,剩余{}条重新排队", batch.size() - next[0], e);
+                for (int i = next[0]; i < batch.size(); i++) {
+                    try {
+                        retry(batch.get(i));
+                    } catch (RuntimeException retryFailed) {
+                        log.error("重新排队失败, id: {}", batch.get(i).getId(), retryFailed);
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    //同一批在一个channel上发送，单条失败重新计入重发
+    private void sendBatch(List<PublishCorrelation> batch, int[] next){
+        PublisherPool.Shard shard = publisherPool.select();
+        long checkoutStart = System.nanoTime();
+        try {
+            shard.getTemplate().invoke(operations -> {
+                rabbitMetrics.channelCheckout(System.nanoTime() - checkoutStart);
+                for (; next[0] < batch.size(); next[0]++) {
+                    PublishCorrelation correlation = batch.get(next[0]);
+                    try {
+                        correlation.setPublishedAt(System.nanoTime());
+                        operations.send(correlation.getExchange(), orderShardRouter.remap(correlation.getRoutingKey()),
+                                correlation.getReturnedMessage(), correlation);
+                        shard.track(correlation);
+                        lifecycleJournal.record(correlation.getId(), LifecycleEvent.PUBLISHED, correlation.getExchange(), 1);
+                        rabbitMetrics.retrySent().increment();
+                    } catch (AmqpException e) {
+                        rabbitMetrics.retrySendFailed().increment();
+                        retry(correlation);
+                    }
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            if(e instanceof AmqpTimeoutException){
+                rabbitMetrics.channelCheckoutTimeout();
+            }
+            //拿不到channel时整批剩余的消息重新排队
+            for (int i = next[0]; i < batch.size(); i++) {
+                rabbitMetrics.retrySendFailed().increment();
+                retry(batch.get(i));
+            }
+        }
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("scheduled", (long) rabbitMetrics.retryScheduled().count());
+        stats.put("sent", (long) rabbitMetrics.retrySent().count());
+        stats.put("abandoned", (long) rabbitMetrics.retryAbandoned().count());
+        stats.put("sendFailed", (long) rabbitMetrics.retrySendFailed().count());
+        stats.put("pending", timer.pendingTimeouts() + ready.size());
+        return stats;
+    }
+}
@@ -0,0 +1,355 @@
+package com.df.service;
+
+import com.df.codec.JsonMessageCodec;
+import com.df.entity.PublishCorrelation;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：退回消息的批量重发。用SCAN逐批遍历errorInQueue::<id>，每批用一个pipeline读出记录，
+ * 按routingKey修正规则改写后沿用原消息id重新发布，等待这一批confirm后用脚本批量删除。
+ * 删除时比较returnedAt，重发后再次被退回的记录会被新的退回覆盖，不会被误删；本次任务开始后才退回的记录跳过，避免循环重发
+ */
+@Component
+public class ReturnedMessageReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReturnedMessageReplayer.class);
+
+    //returnedAt没有变化时才删除，KEYS为记录的key，ARGV为读取时的returnedAt
+    private static final String DELETE_UNCHANGED =
+            "local deleted = 0 "
+            + "for i, key in ipairs(KEYS) do "
+            + "if redis.call('hget', key, 'returnedAt') == ARGV[i] then "
+            + "deleted = deleted + redis.call('del', key) end end "
+            + "return deleted";
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    @Autowired
+    SendMessage sendMessage;
+
+    @Value("${redisson_operator.error_queue}")
+    private String ERROR_IN_QUEUE;
+
+    //SCAN每次返回的建议数量
+    @Value("${returned_replay.scan_count}")
+    private int SCAN_COUNT;
+    //每批重发的消息数
+    @Value("${returned_replay.batch_size}")
+    private int BATCH_SIZE;
+    //每秒最多重发的消息数
+    @Value("${returned_replay.rate}")
+    private double RATE;
+    //默认的routingKey修正规则
+    @Value("${returned_replay.routing_rules}")
+    private String ROUTING_RULES;
+    //等待一批confirm的最长时间(ms)
+    @Value("${batch_publish.confirm_timeout}")
+    private long CONFIRM_TIMEOUT;
+
+    private ExecutorService worker;
+
+    private TokenBucket tokenBucket;
+
+    private volatile boolean running;
+    private volatile boolean stopRequested;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile List<RoutingRule> rules = new ArrayList<>();
+    private volatile String lastError;
+
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder republished = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rerouted = new LongAdder();
+    private final LongAdder skippedRecent = new LongAdder();
+    private final LongAdder unreadable = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        tokenBucket = new TokenBucket(RATE, Math.max(1, RATE));
+        worker = Executors.newSingleThreadExecutor(new DefaultThreadFactory("returned-replay", true));
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        stopRequested = true;
+        worker.shutdownNow();
+    }
+
+    //退回回调中保存的记录，全部为字符串，和redisson的StringCodec一致
+    public static Map<String, String> toRecord(Message message, int replyCode, String replyText, String exchange, String routingKey){
+        MessageProperties properties = message.getMessageProperties();
+        Map<String, String> record = new HashMap<>();
+        record.put("exchange", exchange);
+        record.put("routeKey", routingKey);
+        record.put("errorDetail", replyText);
+        record.put("replyCode", String.valueOf(replyCode));
+        record.put("returnedAt", String.valueOf(System.currentTimeMillis()));
+        record.put("body", Base64.getEncoder().encodeToString(message.getBody()));
+        if(properties.getContentType() != null){
+            record.put("contentType", properties.getContentType());
+        }
+        if(properties.getContentEncoding() != null){
+            record.put("contentEncoding", properties.getContentEncoding());
+        }
+        Object typeId = properties.getHeaders().get(JsonMessageCodec.TYPE_ID_HEADER);
+        if(typeId != null){
+            record.put("typeId", typeId.toString());
+        }
+        return record;
+    }
+
+    //开始一次重发任务，rules为空时使用配置中的规则；已经在运行时返回false
+    public synchronized boolean start(String routingRules, Double rate){
+        if(running){
+            return false;
+        }
+        rules = RoutingRule.parse(StringUtils.hasText(routingRules) ? routingRules : ROUTING_RULES);
+        if(rate != null && rate > 0){
+            tokenBucket.setRate(rate, Math.max(1, rate));
+        }
+        resetCounters();
+        running = true;
+        stopRequested = false;
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        lastError = null;
+        worker.execute(this::run);
+        return true;
+    }
+
+    //当前批次处理完后停止
+    public void stop(){
+        stopRequested = true;
+    }
+
+    private void run(){
+        try {
+            List<String> keys = new ArrayList<>(BATCH_SIZE);
+            //getKeysByPattern内部用SCAN分批遍历，不会一次把所有key读进内存
+            for (String key : redissonClient.getKeys().getKeysByPattern(ERROR_IN_QUEUE + "::*", SCAN_COUNT)) {
+                if(stopRequested){
+                    break;
+                }
+                scanned.increment();
+                keys.add(key);
+                if(keys.size() >= BATCH_SIZE){
+                    replayBatch(keys);
+                    keys.clear();
+                }
+            }
+            if(!keys.isEmpty() && !stopRequested){
+                replayBatch(keys);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            lastError = e.toString();
+            log.warn("退回消息重发任务异常结束", e);
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            running = false;
+        }
+    }
+
+    private void replayBatch(List<String> keys) throws InterruptedException {
+        //一个pipeline读出整批记录
+        RBatch batch = redissonClient.createBatch();
+        for (String key : keys) {
+            batch.<String, String>getMap(key, StringCodec.INSTANCE).readAllMapAsync();
+        }
+        BatchResult<?> result = batch.execute();
+        List<?> records = result.getResponses();
+
+        List<PublishCorrelation> correlations = new ArrayList<>(keys.size());
+        List<String> returnedAts = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> record = (Map<String, String>) records.get(i);
+            PublishCorrelation correlation = toCorrelation(keys.get(i), record);
+            if(correlation != null){
+                correlations.add(correlation);
+                returnedAts.add(record.get("returnedAt"));
+            }
+        }
+        if(correlations.isEmpty()){
+            return;
+        }
+        for (int i = 0; i < correlations.size(); i++) {
+            tokenBucket.acquire(1);
+        }
+        sendMessage.republish(correlations);
+        republished.add(correlations.size());
+
+        //ack的消息已经到达交换机，nack的交给重发调度，两种都可以删除记录；超时或者没有发出去的保留到下一次
+        List<Object> deleteKeys = new ArrayList<>(correlations.size());
+        List<Object> deleteArgs = new ArrayList<>(correlations.size());
+        long deadline = System.currentTimeMillis() + CONFIRM_TIMEOUT;
+        for (int i = 0; i < correlations.size(); i++) {
+            PublishCorrelation correlation = correlations.get(i);
+            try {
+                CorrelationData.Confirm confirm = correlation.getFuture()
+                        .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                (confirm.isAck() ? acked : nacked).increment();
+                deleteKeys.add(ERROR_IN_QUEUE + "::" + correlation.getId());
+                deleteArgs.add(returnedAts.get(i));
+            } catch (TimeoutException | ExecutionException e) {
+                failed.increment();
+            }
+        }
+        if(!deleteKeys.isEmpty()){
+            Long count = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE,
+                    DELETE_UNCHANGED, RScript.ReturnType.INTEGER, deleteKeys, deleteArgs.toArray());
+            deleted.add(count == null ? 0 : count);
+        }
+    }
+
+    private PublishCorrelation toCorrelation(String key, Map<String, String> record){
+        if(record == null || record.isEmpty()){
+            //读取前已经过期或被删除
+            return null;
+        }
+        String body = record.get("body");
+        String returnedAt = record.get("returnedAt");
+        if(body == null || returnedAt == null || record.get("exchange") == null){
+            //旧格式的记录没有保存消息体，无法重发，等待过期
+            unreadable.increment();
+            return null;
+        }
+        if(Long.parseLong(returnedAt) >= startedAt){
+            skippedRecent.increment();
+            return null;
+        }
+        String exchange = record.get("exchange");
+        String routingKey = record.get("routeKey");
+        String corrected = RoutingRule.apply(rules, exchange, routingKey);
+        if(!corrected.equals(routingKey)){
+            rerouted.increment();
+        }
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(record.get("contentType"));
+        properties.setContentEncoding(record.get("contentEncoding"));
+        if(record.get("typeId") != null){
+            properties.setHeader(JsonMessageCodec.TYPE_ID_HEADER, record.get("typeId"));
+        }
+        PublishCorrelation correlation = new PublishCorrelation(key.substring(ERROR_IN_QUEUE.length() + 2), exchange, corrected);
+        correlation.setReturnedMessage(new Message(Base64.getDecoder().decode(body), properties));
+        return correlation;
+    }
+
+    private void resetCounters(){
+        for (LongAdder counter : new LongAdder[]{scanned, republished, acked, nacked, failed, rerouted, skippedRecent, unreadable, deleted}) {
+            counter.reset();
+        }
+    }
+
+    public Map<String, Object> report(){
+        Map<String, Object> report = new LinkedHashMap<>();
+        long end = running ? System.currentTimeMillis() : finishedAt;
+        long elapsed = Math.max(1, end - startedAt);
+        report.put("running", running);
+        report.put("startedAt", startedAt);
+        report.put("elapsedMillis", startedAt == 0 ? 0 : elapsed);
+        report.put("rules", rules.toString());
+        report.put("rate", tokenBucket.getRate());
+        report.put("scanned", scanned.sum());
+        report.put("republished", republished.sum());
+        report.put("rerouted", rerouted.sum());
+        report.put("acked", acked.sum());
+        report.put("nacked", nacked.sum());
+        report.put("failed", failed.sum());
+        report.put("deleted", deleted.sum());
+        report.put("skippedRecent", skippedRecent.sum());
+        report.put("unreadable", unreadable.sum());
+        report.put("republishedPerSecond", startedAt == 0 ? 0 : republished.sum() * 1000 / elapsed);
+        report.put("lastError", lastError);
+        return report;
+    }
+
+    //routingKey修正规则，格式为[exchange:]原routingKey=新routingKey，原routingKey为*时匹配该交换机的所有消息
+    static final class RoutingRule {
+
+        private final String exchange;
+
+        private final String from;
+
+        private final String to;
+
+        private RoutingRule(String exchange, String from, String to){
+            this.exchange = exchange;
+            this.from = from;
+            this.to = to;
+        }
+
+        static List<RoutingRule> parse(String rules){
+            List<RoutingRule> list = new ArrayList<>();
+            if(!StringUtils.hasText(rules)){
+                return list;
+            }
+            for (String rule : rules.split(",")) {
+                rule = rule.trim();
+                int split = rule.indexOf('=');
+                if(split <= 0 || split == rule.length() - 1){
+                    throw new IllegalArgumentException("routingKey修正规则格式为[exchange:]原routingKey=新routingKey: " + rule);
+                }
+                String source = rule.substring(0, split);
+                int colon = source.indexOf(':');
+                list.add(new RoutingRule(colon < 0 ? null : source.substring(0, colon),
+                        colon < 0 ? source : source.substring(colon + 1), rule.substring(split + 1)));
+            }
+            return list;
+        }
+
+        //第一条匹配的规则生效，没有匹配时保持原routingKey
+        static String apply(List<RoutingRule> rules, String exchange, String routingKey){
+            for (RoutingRule rule : rules) {
+                if((rule.exchange == null || rule.exchange.equals(exchange))
+                        && ("*".equals(rule.from) || rule.from.equals(routingKey))){
+                    return rule.to;
+                }
+            }
+            return routingKey;
+        }
+
+        @Override
+        public String toString() {
+            return (exchange == null ? "" : exchange + ":") + from + "=" + to;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.df.service;
+
+import com.df.config.ConnectionConfig;
+import com.df.config.PublisherPool;
+import com.df.entity.ContainerSettings;
+import com.df.metrics.MeterFamily;
+import com.df.metrics.RabbitMetrics;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：运行时调整消费容器的消费者数量、prefetch、批量消费的batch_size以及消费端和发送端连接的channel缓存，不用重新部署。
+ * 消费者数量直接在容器上增减，减少的消费者处理完当前消息后退出；prefetch只对新建的消费者生效，由PrefetchRoller在后台重启容器，
+ * 接口不等待重启完成。开启订单分片时所有分片容器作为orderShards一起调整prefetch；发送端channel缓存通过PublisherPool新建连接替换。
+ * 容器和消费端连接没有公开的读取方法，当前生效的设置从创建时的值开始由这里记录。
+ * 每次调整记录调整前最近一个采样周期和调整稳定后一个采样周期的发送、消费速率和耗时，用来对比调整效果
+ */
+@Component
+public class RuntimeTuner {
+
+    private static final Logger log = LoggerFactory.getLogger(RuntimeTuner.class);
+
+    //订单分片容器由OrderShardManager动态创建，不是bean，作为一组调整
+    private static final String ORDER_SHARDS = "orderShards";
+
+    @Autowired
+    Map<String, SimpleMessageListenerContainer> containers;
+
+    @Autowired
+    ReceiveMessage receiveMessage;
+
+    @Autowired
+    ConsumerAutoscaler consumerAutoscaler;
+
+    @Autowired
+    PublisherPool publisherPool;
+
+    @Autowired
+    ConnectionFactory connectionFactory;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    PrefetchRoller prefetchRoller;
+
+    @Autowired
+    OrderShardManager orderShardManager;
+
+    @Autowired
+    OrderShardRouter orderShardRouter;
+
+    //吞吐和耗时的采样周期(ms)
+    @Value("${tuning.window}")
+    private long WINDOW;
+    //调整后等待多久再开始采样(ms)
+    @Value("${tuning.settle}")
+    private long SETTLE;
+    //保留的调整记录数
+    @Value("${tuning.history_size}")
+    private int HISTORY_SIZE;
+
+    private ScheduledExecutorService sampler;
+
+    //最近两次周期采样，调整前的数据取距离现在足够长的一次
+    private volatile Totals latest;
+    private volatile Totals previous;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final ArrayDeque<Change> history = new ArrayDeque<>();
+
+    //容器名 -> 当前生效的消费者数量和prefetch，messageContainer开启自动调整时以autoscaler为准
+    private final Map<String, ContainerSettings> effective = new ConcurrentHashMap<>();
+
+    private volatile long consumerCheckoutTimeout = ConnectionConfig.CHANNEL_CHECKOUT_TIMEOUT;
+
+    @PostConstruct
+    public void init(){
+        for (String name : containers.keySet()) {
+            ContainerSettings created = receiveMessage.containerSettings(name);
+            if(created != null){
+                effective.put(name, created);
+            }
+        }
+        latest = totals();
+        sampler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("runtime-tuner", true));
+        sampler.scheduleWithFixedDelay(() -> {
+            previous = latest;
+            latest = totals();
+        }, WINDOW, WINDOW, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop(){
+        sampler.shutdownNow();
+    }
+
+    //当前生效的设置
+    public Map<String, Object> settings(){
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for (String name : containers.keySet()) {
+            ContainerSettings current = current(name);
+            if(current != null){
+                settings.put(name + ".consumers", current.getConsumers());
+                settings.put(name + ".maxConsumers", current.getMaxConsumers());
+                settings.put(name + ".prefetch", current.getPrefetch());
+            }
+        }
+        if(orderShardRouter.isEnabled()){
+            settings.put(ORDER_SHARDS + ".prefetch", orderShardManager.getPrefetch());
+        }
+        if(receiveMessage.isBatchListening()){
+            settings.put("listener.batchSize", receiveMessage.getBatchSize());
+        }
+        if(connectionFactory instanceof CachingConnectionFactory){
+            settings.put("consumer.channelCacheSize", ((CachingConnectionFactory) connectionFactory).getChannelCacheSize());
+            settings.put("consumer.checkoutTimeout", consumerCheckoutTimeout);
+        }
+        settings.put("publisher.channelCacheSize", publisherPool.getChannelCacheSize());
+        settings.put("publisher.checkoutTimeout", publisherPool.getCheckoutTimeout());
+        return settings;
+    }
+
+    //调整一个容器的消费者数量和prefetch，为null的不变
+    public synchronized Map<String, Object> tuneContainer(String name, Integer consumers, Integer maxConsumers, Integer prefetch){
+        positive("consumers", consumers);
+        positive("maxConsumers", maxConsumers);
+        positive("prefetch", prefetch);
+        if(ORDER_SHARDS.equals(name) && orderShardRouter.isEnabled()){
+            if(consumers != null || maxConsumers != null){
+                throw new IllegalArgumentException("分片容器固定一个消费者，只能调整prefetch");
+            }
+            return apply("container " + name, () -> {
+                if(prefetch != null && prefetch != orderShardManager.getPrefetch()){
+                    orderShardManager.setPrefetch(prefetch);
+                }
+            });
+        }
+        SimpleMessageListenerContainer container = containers.get(name);
+        if(container == null){
+            throw new IllegalArgumentException("没有这个容器: " + name + ", 可选 " + containerNames());
+        }
+        return apply("container " + name, () -> {
+            if("messageContainer".equals(name) && consumerAutoscaler.isEnabled()){
+                //由autoscaler执行，之后从这里继续自动调整；最大消费者数和消费者数相同，不单独设置
+                consumerAutoscaler.override(consumers, prefetch);
+                return;
+            }
+            ContainerSettings settings = effective.get(name);
+            if(settings == null){
+                throw new IllegalArgumentException("容器没有记录当前的设置，不能调整: " + name);
+            }
+            int current = settings.getConsumers();
+            int max = maxConsumers != null ? maxConsumers
+                    : Math.max(settings.getMaxConsumers(), consumers == null ? current : consumers);
+            int target = consumers != null ? consumers : Math.min(current, max);
+            if(target > max){
+                throw new IllegalArgumentException("consumers不能大于maxConsumers");
+            }
+            //先放宽上限再加消费者，先减消费者再收紧上限
+            if(target > current){
+                container.setMaxConcurrentConsumers(max);
+                container.setConcurrentConsumers(target);
+            }else{
+                container.setConcurrentConsumers(target);
+                container.setMaxConcurrentConsumers(max);
+            }
+            int targetPrefetch = prefetch != null ? prefetch : settings.getPrefetch();
+            effective.put(name, new ContainerSettings(target, max, targetPrefetch));
+            if(targetPrefetch != settings.getPrefetch()){
+                prefetchRoller.update(name, container, targetPrefetch);
+            }
+        });
+    }
+
+    //调整批量消费的batch_size，prefetch小于新数量的容器一起调大
+    public synchronized Map<String, Object> tuneBatchSize(int batchSize){
+        if(!receiveMessage.isBatchListening()){
+            throw new IllegalArgumentException("当前不是批量消费");
+        }
+        positive("batchSize", batchSize);
+        return apply("batch size", () -> {
+            receiveMessage.setBatchSize(batchSize);
+            for (Map.Entry<String, SimpleMessageListenerContainer> entry : containers.entrySet()) {
+                if("messageContainer".equals(entry.getKey()) && consumerAutoscaler.isEnabled()){
+                    consumerAutoscaler.batchSizeChanged(batchSize);
+                    continue;
+                }
+                //死信重放容器使用自己的批量，分片容器逐条顺序消费
+                ContainerSettings settings = effective.get(entry.getKey());
+                if(!"DeadMessageContainer".equals(entry.getKey()) && settings != null && settings.getPrefetch() < batchSize){
+                    effective.put(entry.getKey(), new ContainerSettings(settings.getConsumers(), settings.getMaxConsumers(), batchSize));
+                    prefetchRoller.update(entry.getKey(), entry.getValue(), batchSize);
+                }
+            }
+        });
+    }
+
+    //调整消费端(consumer)或者发送端(publisher)连接的channel缓存数和获取超时
+    public synchronized Map<String, Object> tuneConnection(String target, Integer channelCacheSize, Long checkoutTimeout){
+        positive("channelCacheSize", channelCacheSize);
+        if(checkoutTimeout != null && checkoutTimeout < 0){
+            throw new IllegalArgumentException("checkoutTimeout不能小于0");
+        }
+        if("publisher".equals(target)){
+            return apply("publisher connection", () -> publisherPool.reconfigure(channelCacheSize, checkoutTimeout));
+        }
+        if(!"consumer".equals(target) || !(connectionFactory instanceof CachingConnectionFactory)){
+            throw new IllegalArgumentException("target为consumer或者publisher");
+        }
+        CachingConnectionFactory factory = (CachingConnectionFactory) connectionFactory;
+        Map<String, Object> change = apply("consumer connection", () -> {
+            if(checkoutTimeout != null){
+                factory.setChannelCheckoutTimeout(checkoutTimeout);
+                consumerCheckoutTimeout = checkoutTimeout;
+            }
+            if(channelCacheSize != null){
+                factory.setChannelCacheSize(channelCacheSize);
+            }
+        });
+        if(channelCacheSize != null){
+            //重建消费连接会让所有消费者重新订阅，这里不主动断开
+            change.put("note", "空闲channel的缓存数量立即生效，同时获取channel的上限在消费连接重新建立后生效");
+        }
+        return change;
+    }
+
+    public List<Map<String, Object>> history(){
+        List<Map<String, Object>> list = new ArrayList<>();
+        synchronized (history) {
+            for (Change change : history) {
+                list.add(change.toMap());
+            }
+        }
+        return list;
+    }
+
+    //记录调整前的设置和吞吐，执行调整，稳定后在后台采样调整后的吞吐
+    private Map<String, Object> apply(String action, Runnable tuning){
+        Totals now = totals();
+        Totals base = latest;
+        if(previous != null && now.at - base.at < TimeUnit.MILLISECONDS.toNanos(WINDOW) / 2){
+            //最近一次采样离现在太近，用再前一次
+            base = previous;
+        }
+        Map<String, Object> before = settings();
+        tuning.run();
+        Map<String, Object> after = settings();
+        Map<String, String> diff = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            Object old = before.get(entry.getKey());
+            if(!Objects.equals(old, entry.getValue())){
+                diff.put(entry.getKey(), old + " -> " + entry.getValue());
+            }
+        }
+        Change change = new Change(ids.incrementAndGet(), action, diff, rates(base, now));
+        synchronized (history) {
+            history.addLast(change);
+            while (history.size() > HISTORY_SIZE) {
+                history.removeFirst();
+            }
+        }
+        log.info("运行时调整 {}: {}", action, diff);
+        sampler.schedule(() -> {
+            Totals start = totals();
+            sampler.schedule(() -> change.after = rates(start, totals()), WINDOW, TimeUnit.MILLISECONDS);
+        }, SETTLE, TimeUnit.MILLISECONDS);
+        return change.toMap();
+    }
+
+    //messageContainer开启自动调整时消费者数量和prefetch由autoscaler修改
+    private ContainerSettings current(String name){
+        if("messageContainer".equals(name) && consumerAutoscaler.isEnabled()){
+            return new ContainerSettings(consumerAutoscaler.getConsumers(), consumerAutoscaler.getConsumers(), consumerAutoscaler.getPrefetch());
+        }
+        return effective.get(name);
+    }
+
+    private List<String> containerNames(){
+        List<String> names = new ArrayList<>(containers.keySet());
+        if(orderShardRouter.isEnabled()){
+            names.add(ORDER_SHARDS);
+        }
+        return names;
+    }
+
+    private static void positive(String name, Integer value){
+        if(value != null && value <= 0){
+            throw new IllegalArgumentException(name + "必须大于0");
+        }
+    }
+
+    private Totals totals(){
+        Totals totals = new Totals();
+        totals.at = System.nanoTime();
+        totals.publish = Part.of(rabbitMetrics.confirmLatency());
+        totals.consume = Part.of(rabbitMetrics.consumerProcessing());
+        return totals;
+    }
+
+    private static Map<String, Object> rates(Totals from, Totals to){
+        double seconds = Math.max(1e-3, (to.at - from.at) / 1e9);
+        Map<String, Object> rates = new LinkedHashMap<>();
+        rates.put("seconds", seconds);
+        rates.put("publish", Part.rates(from.publish, to.publish, seconds));
+        rates.put("consume", Part.rates(from.consume, to.consume, seconds));
+        return rates;
+    }
+
+    //某个时刻各项统计的累计值
+    private static final class Totals {
+        private long at;
+        private Part publish;
+        private Part consume;
+    }
+
+    //一组耗时统计合计后的数量、总耗时和分布
+    private static final class Part {
+
+        private long count;
+        private long nanos;
+        private long[] buckets;
+
+        private static Part of(MeterFamily<Timer> family){
+            Part part = new Part();
+            for (Timer timer : family.getMeters().values()) {
+                part.count += timer.count();
+                part.nanos += (long) timer.totalTime(TimeUnit.NANOSECONDS);
+                long[] counts = RabbitMetrics.bucketCounts(timer);
+                if(part.buckets == null){
+                    part.buckets = counts;
+                }else{
+                    for (int i = 0; i < counts.length; i++) {
+                        part.buckets[i] += counts[i];
+                    }
+                }
+            }
+            return part;
+        }
+
+        private static Map<String, Object> rates(Part from, Part to, double seconds){
+            long count = to.count - from.count;
+            Map<String, Object> rates = new LinkedHashMap<>();
+            rates.put("perSecond", count / seconds);
+            rates.put("avgMillis", count == 0 ? 0 : (to.nanos - from.nanos) / 1e6 / count);
+            if(to.buckets != null){
+                long[] window = to.buckets.clone();
+                if(from.buckets != null){
+                    for (int i = 0; i < window.length; i++) {
+                        window[i] -= from.buckets[i];
+                    }
+                }
+                rates.put("p99Millis", RabbitMetrics.percentile(window, 0.99) / 1e6);
+            }
+            return rates;
+        }
+    }
+
+    private static final class Change {
+
+        private final long id;
+
+        private final long at = System.currentTimeMillis();
+
+        private final String action;
+
+        private final Map<String, String> changes;
+
+        private final Map<String, Object> before;
+
+        //稳定后采样完成前为null
+        private volatile Map<String, Object> after;
+
+        private Change(long id, String action, Map<String, String> changes, Map<String, Object> before){
+            this.id = id;
+            this.action = action;
+            this.changes = changes;
+            this.before = before;
+        }
+
+        private Map<String, Object> toMap(){
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("at", at);
+            map.put("action", action);
+            map.put("changes", changes);
+            map.put("before", before);
+            Map<String, Object> measured = after;
+            map.put("after", measured == null ? "measuring" : measured);
+            return map;
+        }
+    }
+}
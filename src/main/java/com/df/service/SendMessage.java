@@ -0,0 +1,328 @@
+package com.df.service;
+
+import com.df.codec.CodecMessageConverter;
+import com.df.config.PublisherPool;
+import com.df.entity.PublishCorrelation;
+import com.df.entity.PublishResult;
+import com.df.journal.LifecycleEvent;
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.df.outbox.MessageOutbox;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：消息发送，支持单条发送与批量发送。批量发送在同一个channel上连续发布，
+ * 通过确认窗口限制未确认消息的数量，每条消息的确认结果单独返回。
+ * 每条消息发送前先写入本地outbox，confirm到达后标记完成。
+ * 消息经由PublisherPool选择的发送连接发出，和消费端使用不同的连接。发送前按exchange从PublishRateLimiter取令牌，集群共享发送速率
+ */
+@Component
+public class SendMessage {
+
+    @Autowired
+    PublisherPool publisherPool;
+
+    @Autowired
+    CodecMessageConverter codecMessageConverter;
+
+    @Autowired
+    ConfirmTracker confirmTracker;
+
+    @Autowired
+    MessageOutbox messageOutbox;
+
+    @Autowired
+    RabbitMetrics rabbitMetrics;
+
+    @Autowired
+    LifecycleJournal lifecycleJournal;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PublishRateLimiter publishRateLimiter;
+
+    @Autowired
+    OrderShardRouter orderShardRouter;
+
+    //同时等待broker确认的最大消息数量
+    @Value("${batch_publish.max_outstanding}")
+    private int MAX_OUTSTANDING;
+
+    //等待确认窗口以及等待确认结果的超时时间(ms)
+    @Value("${batch_publish.confirm_timeout}")
+    private long CONFIRM_TIMEOUT;
+
+    //异步发送同时等待确认的最大消息数量
+    @Value("${send_async.max_in_flight}")
+    private int ASYNC_MAX_IN_FLIGHT;
+    //异步发送的发布线程数
+    @Value("${send_async.publishers}")
+    private int ASYNC_PUBLISHERS;
+    //等待发布线程的消息数上限，满了直接拒绝
+    @Value("${send_async.queue_capacity}")
+    private int ASYNC_QUEUE_CAPACITY;
+
+    //确认窗口，发送前获取许可，收到confirm后释放
+    private Semaphore outstanding;
+
+    //异步发送的确认窗口，不等待许可，满了直接拒绝
+    private Semaphore asyncInFlight;
+
+    //异步发送时在这里获取channel、写outbox和发布，调用线程不等待
+    private ThreadPoolExecutor asyncPublishers;
+
+    @PostConstruct
+    public void init(){
+        outstanding = new Semaphore(MAX_OUTSTANDING);
+        asyncInFlight = new Semaphore(ASYNC_MAX_IN_FLIGHT);
+        asyncPublishers = new ThreadPoolExecutor(ASYNC_PUBLISHERS, ASYNC_PUBLISHERS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ASYNC_QUEUE_CAPACITY), new DefaultThreadFactory("send-async", true),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("rabbit_send_async_in_flight", () -> ASYNC_MAX_IN_FLIGHT - asyncInFlight.availablePermits())
+                .description("异步发送中等待confirm的消息数量").register(meterRegistry);
+    }
+
+    //单条发送，超过发送限速并且等待max_wait仍没有令牌时抛出异常
+    public CorrelationData send(String exchange, String routingKey, Object entity){
+        if(!publishRateLimiter.acquire(exchange, 1)){
+            throw new AmqpTimeoutException("超过发送限速: " + exchange);
+        }
+        return publish(exchange, routingKey, entity);
+    }
+
+    private CorrelationData publish(String exchange, String routingKey, Object entity){
+        PublishCorrelation correlation = getCorrelationData(exchange, routingKey, entity);
+        prepare(correlation);
+        PublisherPool.Shard shard = publisherPool.select();
+        long checkoutStart = System.nanoTime();
+        try {
+            shard.getTemplate().invoke(operations -> {
+                rabbitMetrics.channelCheckout(System.nanoTime() - checkoutStart);
+                correlation.setPublishedAt(System.nanoTime());
+                operations.send(exchange, routingKey, correlation.getReturnedMessage(), correlation);
+                shard.track(correlation);
+                lifecycleJournal.record(correlation.getId(), LifecycleEvent.PUBLISHED, exchange, 0);
+                return null;
+            });
+        } catch (AmqpException e) {
+            if(e instanceof AmqpTimeoutException){
+                rabbitMetrics.channelCheckoutTimeout();
+            }
+            //调用方已经收到异常，不再作为待确认消息
+            release(correlation);
+            throw e;
+        }
+        return correlation;
+    }
+
+    @PreDestroy
+    public void stop(){
+        asyncPublishers.shutdown();
+    }
+
+    //异步发送，返回在confirm到达时完成的future；确认窗口已满、超过发送限速或者发布线程的队列已满时不发送，返回null。
+    //调用线程只做两次tryAcquire和一次不等待的入队，不会阻塞：获取channel(最多publisher.checkout_timeout)、
+    //编码、outbox追加(全局锁和磁盘写入)和发布都在send-async线程上进行，这些步骤失败时future按失败完成。
+    //唯一的例外是第一次发往没有单独配置限速的exchange时，PublishRateLimiter会同步向redis租用一次令牌
+    public CompletableFuture<PublishResult> trySendAsync(String exchange, String routingKey, Object entity){
+        if(!asyncInFlight.tryAcquire()){
+            rabbitMetrics.sendThrottled();
+            return null;
+        }
+        if(!publishRateLimiter.tryAcquire(exchange, 1)){
+            asyncInFlight.release();
+            rabbitMetrics.sendThrottled();
+            return null;
+        }
+        CompletableFuture<PublishResult> result = new CompletableFuture<>();
+        try {
+            asyncPublishers.execute(() -> publishAsync(exchange, routingKey, entity, result));
+        } catch (RejectedExecutionException e) {
+            asyncInFlight.release();
+            rabbitMetrics.sendThrottled();
+            return null;
+        }
+        return result;
+    }
+
+    private void publishAsync(String exchange, String routingKey, Object entity, CompletableFuture<PublishResult> result){
+        CorrelationData correlation;
+        try {
+            correlation = publish(exchange, routingKey, entity);
+        } catch (RuntimeException e) {
+            asyncInFlight.release();
+            result.complete(new PublishResult(null, false, e.getMessage()));
+            return;
+        }
+        String id = correlation.getId();
+        //nack后消息交给重发调度，但这次请求的结果已经确定，许可同样归还
+        correlation.getFuture().addCallback(confirm -> {
+            asyncInFlight.release();
+            result.complete(new PublishResult(id, confirm.isAck(), confirm.getReason()));
+        }, e -> {
+            asyncInFlight.release();
+            result.complete(new PublishResult(id, false, e.getMessage()));
+        });
+    }
+
+    //批量发送，每条消息返回一个在confirm到达时完成的future
+    public List<CompletableFuture<PublishResult>> sendBatch(String exchange, String routingKey, List<?> entities){
+        List<PublishCorrelation> correlations = publishBatch(exchange, entities, entity -> routingKey);
+        List<CompletableFuture<PublishResult>> futures = new ArrayList<>(correlations.size());
+        for (CorrelationData correlationData : correlations) {
+            String id = correlationData.getId();
+            futures.add(correlationData.getFuture().completable().handle((confirm, e) -> e != null
+                    ? new PublishResult(id, false, e.getMessage())
+                    : new PublishResult(id, confirm.isAck(), confirm.getReason())));
+        }
+        return futures;
+    }
+
+    //批量发送并等待全部确认结果，超过confirm_timeout仍未确认的消息按失败返回
+    public List<PublishResult> sendBatchAndWait(String exchange, String routingKey, List<?> entities){
+        return sendBatchAndWait(exchange, entities, entity -> routingKey);
+    }
+
+    //批量发送，每条消息按routingKeys分别路由，例如按用户分配到分片队列，同一channel上按列表顺序发布
+    public <T> List<PublishResult> sendBatchAndWait(String exchange, List<T> entities, Function<? super T, String> routingKeys){
+        List<PublishCorrelation> correlations = publishBatch(exchange, entities, routingKeys);
+        List<PublishResult> results = new ArrayList<>(correlations.size());
+        long deadline = System.currentTimeMillis() + CONFIRM_TIMEOUT;
+        for (CorrelationData correlationData : correlations) {
+            String id = correlationData.getId();
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(remaining, TimeUnit.MILLISECONDS);
+                results.add(new PublishResult(id, confirm.isAck(), confirm.getReason()));
+            } catch (TimeoutException e) {
+                results.add(new PublishResult(id, false, "等待确认超时"));
+            } catch (ExecutionException e) {
+                results.add(new PublishResult(id, false, e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(new PublishResult(id, false, "等待确认被中断"));
+            }
+        }
+        return results;
+    }
+
+    //重新发送已经编码好的消息，例如outbox启动时的重放，沿用原来的消息id
+    public List<PublishCorrelation> republish(List<PublishCorrelation> correlations){
+        publishPrepared(correlations);
+        return correlations;
+    }
+
+    private <T> List<PublishCorrelation> publishBatch(String exchange, List<T> entities, Function<? super T, String> routingKeys){
+        List<PublishCorrelation> correlations = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            correlations.add(getCorrelationData(exchange, routingKeys.apply(entity), entity));
+        }
+        publishPrepared(correlations);
+        return correlations;
+    }
+
+    //在同一个channel上依次发布，窗口满时阻塞等待之前的消息确认，没有发送令牌时等待补充
+    private void publishPrepared(List<PublishCorrelation> correlations){
+        PublisherPool.Shard shard = publisherPool.select();
+        int[] next = {0};
+        boolean[] limited = {false};
+        long checkoutStart = System.nanoTime();
+        try {
+            shard.getTemplate().invoke(operations -> {
+                rabbitMetrics.channelCheckout(System.nanoTime() - checkoutStart);
+                for (; next[0] < correlations.size(); next[0]++) {
+                    PublishCorrelation correlation = correlations.get(next[0]);
+                    //有一条等待令牌超时后，剩下的不再等待，取不到令牌直接失败
+                    if(limited[0] ? !publishRateLimiter.tryAcquire(correlation.getExchange(), 1)
+                            : !publishRateLimiter.acquire(correlation.getExchange(), 1)){
+                        limited[0] = true;
+                        correlation.getFuture().set(new CorrelationData.Confirm(false, "超过发送限速"));
+                        continue;
+                    }
+                    if(!acquire()){
+                        correlation.getFuture().set(new CorrelationData.Confirm(false, "确认窗口已满"));
+                        continue;
+                    }
+                    //无论ack、nack还是异常都归还窗口许可
+                    correlation.getFuture().addCallback(confirm -> outstanding.release(), e -> outstanding.release());
+                    try {
+                        prepare(correlation);
+                        correlation.setPublishedAt(System.nanoTime());
+                        operations.send(correlation.getExchange(), orderShardRouter.remap(correlation.getRoutingKey()),
+                                correlation.getReturnedMessage(), correlation);
+                        shard.track(correlation);
+                        lifecycleJournal.record(correlation.getId(), LifecycleEvent.PUBLISHED, correlation.getExchange(), 0);
+                    } catch (RuntimeException e) {
+                        release(correlation);
+                        correlation.getFuture().setException(e);
+                    }
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            if(e instanceof AmqpTimeoutException){
+                rabbitMetrics.channelCheckoutTimeout();
+            }
+            //拿不到channel，还没有发送的消息直接失败
+            for (int i = next[0]; i < correlations.size(); i++) {
+                correlations.get(i).getFuture().setException(e);
+            }
+        }
+    }
+
+    //发送前登记到本地跟踪和outbox
+    private void prepare(PublishCorrelation correlation){
+        confirmTracker.track(correlation.getId());
+        messageOutbox.append(correlation);
+    }
+
+    //没有发出去的消息不再等待确认
+    private void release(PublishCorrelation correlation){
+        confirmTracker.abandon(correlation.getId());
+        messageOutbox.done(correlation);
+    }
+
+    private boolean acquire(){
+        try {
+            return outstanding.tryAcquire(CONFIRM_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PublishCorrelation getCorrelationData(String exchange, String routingKey, Object object){
+        PublishCorrelation correlation = new PublishCorrelation(UUID.randomUUID().toString(), exchange, routingKey);
+        //只编码一次，发送、确认回调和重发都使用同一个消息
+        correlation.setReturnedMessage(codecMessageConverter.toMessage(object));
+        return correlation;
+    }
+}
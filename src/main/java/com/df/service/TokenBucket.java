@@ -0,0 +1,75 @@
+package com.df.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：令牌桶限速，按rate每秒补充令牌，最多积累capacity个
+ */
+public class TokenBucket {
+
+    private double rate;
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double rate, double capacity){
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized void setRate(double rate, double capacity){
+        refill();
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    public synchronized double getRate(){
+        return rate;
+    }
+
+    //尝试获取令牌，不等待
+    public synchronized boolean tryAcquire(int permits){
+        refill();
+        if(tokens >= permits){
+            tokens -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    //获取令牌，不够时等待补充，permits不能超过capacity
+    public void acquire(int permits) throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if(tokens >= permits){
+                    tokens -= permits;
+                    return;
+                }
+                if(permits > capacity){
+                    throw new IllegalArgumentException("permits超过令牌桶容量: " + permits);
+                }
+                double missing = permits - tokens;
+                waitNanos = (long) (missing / rate * TimeUnit.SECONDS.toNanos(1));
+            }
+            LockSupport.parkNanos(this, Math.max(waitNanos, TimeUnit.MICROSECONDS.toNanos(100)));
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void refill(){
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,214 @@
+package com.df.service;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：多个队列共用的异步消费工作线程。每个队列是一个lane，有自己的任务队列、权重和最多占用的线程数，
+ * 工作线程空闲时按平滑加权轮询从有任务的lane中取一个执行：都有积压时按权重分配线程，
+ * 只有一个lane有任务时它可以用满自己的上限，不会让线程空等。
+ * 给低延迟队列较高的权重，给批量队列设置线程上限，批量积压时低延迟队列的消息仍然能很快拿到线程
+ */
+public class WeightedFairExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(WeightedFairExecutor.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //有新任务或者有任务执行完(lane可能从上限回落)时唤醒
+    private final Condition available = lock.newCondition();
+
+    private final List<Lane> lanes = new ArrayList<>();
+
+    private final Thread[] workers;
+
+    private final int workerCount;
+
+    private boolean shutdown;
+
+    public WeightedFairExecutor(String name, int workers){
+        this.workerCount = Math.max(1, workers);
+        this.workers = new Thread[workerCount];
+        ThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        for (int i = 0; i < workerCount; i++) {
+            this.workers[i] = threadFactory.newThread(this::work);
+            this.workers[i].start();
+        }
+    }
+
+    //注册一个lane，maxWorkers不大于0时可以用满所有线程
+    public Executor lane(String name, int weight, int maxWorkers){
+        lock.lock();
+        try {
+            Lane lane = new Lane(name, Math.max(1, weight),
+                    maxWorkers <= 0 ? workerCount : Math.min(workerCount, maxWorkers));
+            lanes.add(lane);
+            return lane;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //不再接收新任务，已经排队的任务执行完后线程退出
+    public void shutdown(){
+        lock.lock();
+        try {
+            shutdown = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work(){
+        while (true) {
+            Lane lane;
+            Runnable task;
+            lock.lock();
+            try {
+                while ((lane = pick()) == null) {
+                    if(shutdown && isDrained()){
+                        return;
+                    }
+                    available.awaitUninterruptibly();
+                }
+                task = lane.tasks.pollFirst();
+                lane.running++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("lane {} 的任务执行异常", lane.name, e);
+            } finally {
+                lock.lock();
+                try {
+                    lane.running--;
+                    lane.executed++;
+                    //这个lane可能刚从上限回落，唤醒一个等待的线程
+                    if(!lane.tasks.isEmpty()){
+                        available.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    //平滑加权轮询：可调度的lane当前值加上权重，取最大的一个减去本轮总权重。调用时持有锁
+    private Lane pick(){
+        Lane best = null;
+        int total = 0;
+        for (Lane lane : lanes) {
+            if(lane.tasks.isEmpty() || lane.running >= lane.maxWorkers){
+                continue;
+            }
+            lane.current += lane.weight;
+            total += lane.weight;
+            if(best == null || lane.current > best.current){
+                best = lane;
+            }
+        }
+        if(best != null){
+            best.current -= total;
+        }
+        return best;
+    }
+
+    private boolean isDrained(){
+        for (Lane lane : lanes) {
+            if(!lane.tasks.isEmpty()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("workers", workerCount);
+            for (Lane lane : lanes) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("weight", lane.weight);
+                item.put("maxWorkers", lane.maxWorkers);
+                item.put("queued", lane.tasks.size());
+                item.put("running", lane.running);
+                item.put("executed", lane.executed);
+                stats.put(lane.name, item);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    public int queued(Executor executor){
+        lock.lock();
+        try {
+            return ((Lane) executor).tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class Lane implements Executor {
+
+        private final String name;
+
+        private final int weight;
+
+        private final int maxWorkers;
+
+        //以下字段都在锁内访问
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        private int current;
+
+        private int running;
+
+        private long executed;
+
+        private Lane(String name, int weight, int maxWorkers){
+            this.name = name;
+            this.weight = weight;
+            this.maxWorkers = maxWorkers;
+        }
+
+        @Override
+        public void execute(Runnable task){
+            lock.lock();
+            try {
+                if(shutdown){
+                    throw new RejectedExecutionException("工作线程已经关闭");
+                }
+                if(tasks.isEmpty()){
+                    //重新开始积压的lane从0开始计算，空闲期间不累积份额
+                    current = 0;
+                }
+                tasks.addLast(task);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.df.codec;
+
+import org.junit.Test;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：deflate和gzip解压后的大小上限
+ */
+public class MessageCompressorTest {
+
+    //全是0的消息体压缩比很高，压缩后只有几十字节
+    private static final byte[] ZEROS = new byte[1 << 20];
+
+    @Test
+    public void deflateWithinLimitIsRestored(){
+        DeflateCompressor compressor = new DeflateCompressor(6, ZEROS.length);
+
+        assertArrayEquals(ZEROS, compressor.decompress(compressor.compress(ZEROS)));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void deflateOverLimitIsRejected(){
+        DeflateCompressor compressor = new DeflateCompressor(6, ZEROS.length - 1);
+
+        compressor.decompress(compressor.compress(ZEROS));
+    }
+
+    @Test
+    public void gzipWithinLimitIsRestored(){
+        GzipCompressor compressor = new GzipCompressor(ZEROS.length);
+
+        assertArrayEquals(ZEROS, compressor.decompress(compressor.compress(ZEROS)));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void gzipOverLimitIsRejected(){
+        GzipCompressor compressor = new GzipCompressor(ZEROS.length - 1);
+
+        compressor.decompress(compressor.compress(ZEROS));
+    }
+}
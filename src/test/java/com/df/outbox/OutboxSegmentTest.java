@@ -0,0 +1,135 @@
+package com.df.outbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：outbox段文件重启后的恢复
+ */
+public class OutboxSegmentTest {
+
+    private static final int SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenReturnsOnlyPendingRecords() throws Exception {
+        File file = folder.newFile("outbox-0.seg");
+        OutboxSegment segment = OutboxSegment.create(0, file, SIZE);
+        int first = segment.append(record("1", "body-1"));
+        segment.append(new OutboxRecord("2", "order", "key", "application/json",
+                bytes("body-2"), "deflate", "com.df.entity.User"));
+        segment.markDone(first);
+        segment.force();
+
+        OutboxSegment reopened = OutboxSegment.open(0, file);
+        List<OutboxRecord> pending = reopened.readPending();
+
+        assertEquals(1, pending.size());
+        OutboxRecord record = pending.get(0);
+        assertEquals("2", record.getId());
+        assertEquals("order", record.getExchange());
+        assertEquals("key", record.getRoutingKey());
+        assertEquals("application/json", record.getContentType());
+        assertArrayEquals(bytes("body-2"), record.getBody());
+        assertEquals("deflate", record.getContentEncoding());
+        assertEquals("com.df.entity.User", record.getTypeId());
+        assertFalse(reopened.isComplete());
+        assertTrue(reopened.markDone(record.getOffset()));
+    }
+
+    @Test
+    public void markDoneTwiceCountsOnce() throws Exception {
+        OutboxSegment segment = OutboxSegment.create(0, folder.newFile("outbox-0.seg"), SIZE);
+        int first = segment.append(record("1", "body-1"));
+        segment.append(record("2", "body-2"));
+        segment.seal();
+
+        assertFalse(segment.markDone(first));
+        //confirm和重发同时标记同一条，不能把另一条也算作完成
+        assertFalse(segment.markDone(first));
+        assertFalse(segment.isComplete());
+    }
+
+    @Test
+    public void appendStopsWhenSegmentIsFull() throws Exception {
+        OutboxSegment segment = OutboxSegment.create(0, folder.newFile("outbox-0.seg"), 64);
+        assertTrue(segment.append(record("1", "x")) >= 0);
+        assertEquals(-1, segment.append(record("2", "xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx")));
+    }
+
+    @Test
+    public void uncommittedRecordIsIgnored() throws Exception {
+        File file = folder.newFile("outbox-0.seg");
+        OutboxSegment segment = OutboxSegment.create(0, file, SIZE);
+        int first = segment.append(record("1", "body-1"));
+        int second = segment.append(record("2", "body-2"));
+        segment.force();
+        //模拟写第二条时崩溃：length还没写入
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(second);
+            raf.writeInt(0);
+        }
+
+        List<OutboxRecord> pending = OutboxSegment.open(0, file).readPending();
+
+        assertEquals(1, pending.size());
+        assertEquals(first, pending.get(0).getOffset());
+    }
+
+    @Test
+    public void readsRecordsWithoutTrailingFields() throws Exception {
+        File file = folder.newFile("outbox-0.seg");
+        //加contentEncoding和typeId之前的记录格式
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        byte[] body = bytes("old");
+        buffer.putInt(0).put(OutboxSegment.PENDING);
+        putString(buffer, "9");
+        putString(buffer, "order");
+        putString(buffer, "key");
+        putString(buffer, "application/x-java-serialized-object");
+        buffer.putInt(body.length).put(body);
+        buffer.putInt(0, buffer.position() - 5);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(buffer.array());
+        }
+
+        List<OutboxRecord> pending = OutboxSegment.open(0, file).readPending();
+
+        assertEquals(1, pending.size());
+        assertEquals("9", pending.get(0).getId());
+        assertArrayEquals(body, pending.get(0).getBody());
+        assertNull(pending.get(0).getContentEncoding());
+        assertNull(pending.get(0).getTypeId());
+    }
+
+    private static OutboxRecord record(String id, String body){
+        return new OutboxRecord(id, "order", "key", "application/octet-stream", bytes(body), null, null);
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, String value){
+        byte[] bytes = bytes(value);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+}
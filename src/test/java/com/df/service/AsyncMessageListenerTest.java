@@ -0,0 +1,134 @@
+package com.df.service;
+
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：异步消费乱序完成时按投递顺序签收
+ */
+public class AsyncMessageListenerTest {
+
+    private Channel channel;
+
+    private RabbitMetrics rabbitMetrics;
+
+    //交给工作线程的任务，由测试决定执行顺序
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final Set<Long> failing = new HashSet<>();
+
+    private BatchMessageListener.Disposition disposition = BatchMessageListener.Disposition.REQUEUE;
+
+    private AsyncMessageListener listener;
+
+    @Before
+    public void setUp(){
+        channel = mock(Channel.class);
+        rabbitMetrics = new RabbitMetrics();
+        ReflectionTestUtils.setField(rabbitMetrics, "meterRegistry", new SimpleMeterRegistry());
+        rabbitMetrics.init();
+        Executor executor = tasks::add;
+        listener = new AsyncMessageListener(message -> {
+            if(failing.contains(message.getMessageProperties().getDeliveryTag())){
+                throw new IllegalStateException("处理失败");
+            }
+        }, message -> disposition, executor, 10, rabbitMetrics, mock(LifecycleJournal.class));
+    }
+
+    @Test
+    public void laterCompletionWaitsForEarlierDelivery() throws Exception {
+        deliver(3);
+
+        run(3);
+        run(2);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        //最早的一条完成后，连续完成的三条合并成一次签收
+        run(1);
+
+        verify(channel).basicAck(3, true);
+        assertEquals(0, listener.pendingCount());
+    }
+
+    @Test
+    public void ackStopsAtRunningDelivery() throws Exception {
+        deliver(3);
+
+        run(1);
+        run(3);
+        run(2);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(1, true);
+        order.verify(channel).basicAck(3, true);
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void rejectedDeliveryIsSkippedByMultipleAck() throws Exception {
+        failing.add(2L);
+        deliver(3);
+
+        run(2);
+        run(3);
+        run(1);
+
+        //拒绝立即发出，之后的批量签收不使用被拒绝的tag
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicReject(2, true);
+        order.verify(channel).basicAck(3, true);
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void delayedFailureIsAckedInOrder() throws Exception {
+        failing.add(1L);
+        disposition = BatchMessageListener.Disposition.DELAYED;
+        deliver(2);
+
+        run(2);
+        run(1);
+
+        verify(channel).basicAck(2, true);
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+    }
+
+    private void deliver(int count) throws Exception {
+        for (long tag = 1; tag <= count; tag++) {
+            MessageProperties properties = new MessageProperties();
+            properties.setDeliveryTag(tag);
+            properties.setConsumerQueue("order");
+            properties.setHeader(DeduplicatingMessageListener.CORRELATION_HEADER, "id-" + tag);
+            listener.onMessage(new Message(new byte[0], properties), channel);
+        }
+    }
+
+    //按投递tag执行对应的任务
+    private void run(long tag){
+        tasks.get((int) tag - 1).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.df.service;
+
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：批量消费的整批签收和失败时的二分拒绝
+ */
+public class BatchMessageListenerTest {
+
+    private Channel channel;
+
+    private RabbitMetrics rabbitMetrics;
+
+    private BatchMessageListener.Disposition disposition;
+
+    @Before
+    public void setUp(){
+        channel = mock(Channel.class);
+        rabbitMetrics = new RabbitMetrics();
+        ReflectionTestUtils.setField(rabbitMetrics, "meterRegistry", new SimpleMeterRegistry());
+        rabbitMetrics.init();
+        disposition = BatchMessageListener.Disposition.DEAD_LETTER;
+    }
+
+    @Test
+    public void fullBatchIsAckedOnce() throws Exception {
+        BatchMessageListener listener = listener(messages -> { }, 3, 60000);
+
+        for (long tag = 1; tag <= 3; tag++) {
+            listener.onMessage(message(tag), channel);
+        }
+
+        verify(channel).basicAck(3, true);
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void partialBatchIsFlushedAfterWindow() throws Exception {
+        BatchMessageListener listener = listener(messages -> { }, 10, 50);
+
+        listener.onMessage(message(1), channel);
+        listener.onMessage(message(2), channel);
+
+        verify(channel, timeout(2000)).basicAck(2, true);
+    }
+
+    @Test
+    public void failingMessageIsIsolatedByBisection() throws Exception {
+        BatchMessageListener listener = listener(BatchMessageListenerTest::failOnTwo, 4, 60000);
+
+        for (long tag = 1; tag <= 4; tag++) {
+            listener.onMessage(message(tag), channel);
+        }
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(1, true);
+        order.verify(channel).basicReject(2, false);
+        order.verify(channel).basicAck(4, true);
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void delayedFailureIsAckedAlone() throws Exception {
+        disposition = BatchMessageListener.Disposition.DELAYED;
+        BatchMessageListener listener = listener(BatchMessageListenerTest::failOnTwo, 2, 60000);
+
+        listener.onMessage(message(1), channel);
+        listener.onMessage(message(2), channel);
+
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicAck(1, true);
+        //前面的消息已经签收，不能用multiple
+        order.verify(channel).basicAck(2, false);
+        order.verifyNoMoreInteractions();
+    }
+
+    private BatchMessageListener listener(BatchMessageListener.BatchHandler handler, int batchSize, long window){
+        return new BatchMessageListener(handler, message -> disposition, batchSize, window,
+                rabbitMetrics, mock(LifecycleJournal.class));
+    }
+
+    private static void failOnTwo(List<Message> messages){
+        for (Message message : messages) {
+            if(message.getMessageProperties().getDeliveryTag() == 2){
+                throw new IllegalStateException("处理失败");
+            }
+        }
+    }
+
+    private static Message message(long tag){
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        properties.setConsumerQueue("order");
+        properties.setHeader(DeduplicatingMessageListener.CORRELATION_HEADER, "id-" + tag);
+        return new Message(new byte[0], properties);
+    }
+}
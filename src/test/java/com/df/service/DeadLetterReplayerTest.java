@@ -0,0 +1,162 @@
+package com.df.service;
+
+import com.df.entity.PublishCorrelation;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：死信重放容器中处理失败的消息，重新入队有次数上限，之后写入隔离存储
+ */
+public class DeadLetterReplayerTest {
+
+    private DeadLetterReplayer replayer;
+
+    private QuarantineStore quarantineStore;
+
+    //每次重放发出的消息id
+    private final List<String> republished = new ArrayList<>();
+
+    //broker拒绝的消息id
+    private final Set<String> nacked = new HashSet<>();
+
+    @Before
+    public void setUp(){
+        ConsumerRetryCounter counter = new ConsumerRetryCounter();
+        ReflectionTestUtils.setField(counter, "MAX_ATTEMPTS", 3);
+        quarantineStore = mock(QuarantineStore.class);
+        SendMessage sendMessage = mock(SendMessage.class);
+        doAnswer(invocation -> {
+            List<PublishCorrelation> correlations = invocation.getArgument(0);
+            for (PublishCorrelation correlation : correlations) {
+                republished.add(correlation.getId());
+                boolean ack = !nacked.contains(correlation.getId());
+                correlation.getFuture().set(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            }
+            return correlations;
+        }).when(sendMessage).republish(any());
+        replayer = new DeadLetterReplayer();
+        replayer.consumerRetryCounter = counter;
+        replayer.quarantineStore = quarantineStore;
+        replayer.sendMessage = sendMessage;
+        ReflectionTestUtils.setField(replayer, "ORDER_EXCHANGE_NAME", "order");
+        ReflectionTestUtils.setField(replayer, "ORDER1_EXCHANGE", "order1");
+        ReflectionTestUtils.setField(replayer, "RATE", 1000D);
+        ReflectionTestUtils.setField(replayer, "MAX_DEATHS", 2L);
+        ReflectionTestUtils.setField(replayer, "REASONS", "rejected,expired");
+        ReflectionTestUtils.setField(replayer, "CONFIRM_TIMEOUT", 1000L);
+        replayer.init();
+    }
+
+    @Test
+    public void replayedMessageDeadLetteredAgainIsReplayedAgain() throws Exception {
+        replayer.replay(Collections.singletonList(deadLetter("id-1", 1, 1)));
+        //重放后再次死信，同一个id换了投递tag，按新的x-death重新判断
+        replayer.replay(Collections.singletonList(deadLetter("id-1", 2, 2)));
+
+        assertEquals(Arrays.asList("id-1", "id-1"), republished);
+        verify(quarantineStore, never()).write(any());
+    }
+
+    @Test
+    public void deadLetteredTooOftenIsQuarantined() throws Exception {
+        replayer.replay(Collections.singletonList(deadLetter("id-1", 1, 2)));
+        replayer.replay(Collections.singletonList(deadLetter("id-1", 2, 3)));
+
+        assertEquals(Collections.singletonList("id-1"), republished);
+        verify(quarantineStore).write(any());
+    }
+
+    @Test
+    public void bisectionRetryDoesNotResendSameDelivery() throws Exception {
+        nacked.add("id-2");
+        doThrow(new IOException("disk full")).doNothing().when(quarantineStore).write(any());
+        Message first = deadLetter("id-1", 1, 1);
+        Message second = deadLetter("id-2", 2, 1);
+        try {
+            replayer.replay(Arrays.asList(first, second));
+            fail();
+        } catch (IOException expected) {
+            //没有确认的消息写隔离存储失败，整批交给二分重试
+        }
+        nacked.clear();
+
+        replayer.replay(Collections.singletonList(first));
+        replayer.replay(Collections.singletonList(second));
+
+        //同一次投递已经确认的不再发送
+        assertEquals(Arrays.asList("id-1", "id-2", "id-2"), republished);
+    }
+
+    @Test
+    public void requeueIsCappedThenQuarantined() throws Exception {
+        Message message = message("id-1");
+
+        assertEquals(BatchMessageListener.Disposition.REQUEUE, replayer.decide(message));
+        assertEquals(BatchMessageListener.Disposition.REQUEUE, replayer.decide(message));
+        verify(quarantineStore, never()).write(any());
+        //达到次数上限后写入隔离存储，原消息签收
+        assertEquals(BatchMessageListener.Disposition.DELAYED, replayer.decide(message));
+        verify(quarantineStore).write(any());
+    }
+
+    @Test
+    public void messageWithoutIdIsNotRequeued() throws Exception {
+        assertEquals(BatchMessageListener.Disposition.DELAYED, replayer.decide(message(null)));
+        verify(quarantineStore).write(any());
+    }
+
+    @Test
+    public void deadLettersWhenQuarantineFails() throws Exception {
+        doThrow(new IOException("disk full")).when(quarantineStore).write(any());
+
+        assertEquals(BatchMessageListener.Disposition.DEAD_LETTER, replayer.decide(message(null)));
+    }
+
+    private static Message deadLetter(String id, long deliveryTag, long deaths){
+        Map<String, Object> death = new HashMap<>();
+        death.put("reason", "rejected");
+        death.put("exchange", "order");
+        death.put("routing-keys", Collections.singletonList("order.key"));
+        death.put("count", deaths);
+        Message message = message(id);
+        message.getMessageProperties().setDeliveryTag(deliveryTag);
+        message.getMessageProperties().setConsumerTag("dead.queue_1");
+        message.getMessageProperties().setHeader("x-death", Collections.singletonList(death));
+        return message;
+    }
+
+    private static Message message(String id){
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue("dead.queue");
+        if(id != null){
+            properties.setHeader(DeduplicatingMessageListener.CORRELATION_HEADER, id);
+        }
+        return new Message(new byte[0], properties);
+    }
+}
@@ -0,0 +1,105 @@
+package com.df.service;
+
+import com.df.journal.LifecycleJournal;
+import com.df.metrics.RabbitMetrics;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：分片顺序消费失败时原地重试，用完次数后进入死信队列并暂停该用户
+ */
+public class OrderedMessageListenerTest {
+
+    private Channel channel;
+
+    //deliveryTag -> 还要失败的次数
+    private final Map<Long, Integer> failures = new HashMap<>();
+
+    private OrderedMessageListener listener;
+
+    @Before
+    public void setUp(){
+        channel = mock(Channel.class);
+        RabbitMetrics rabbitMetrics = new RabbitMetrics();
+        ReflectionTestUtils.setField(rabbitMetrics, "meterRegistry", new SimpleMeterRegistry());
+        rabbitMetrics.init();
+        listener = new OrderedMessageListener(message -> {
+            long tag = message.getMessageProperties().getDeliveryTag();
+            Integer remaining = failures.get(tag);
+            if(remaining != null && remaining > 0){
+                failures.put(tag, remaining - 1);
+                throw new IllegalStateException("处理失败");
+            }
+        }, message -> message.getMessageProperties().getHeaders().get("user"),
+                3, 1, 1, rabbitMetrics, mock(LifecycleJournal.class));
+    }
+
+    @Test
+    public void failureIsRetriedInPlace() throws Exception {
+        failures.put(1L, 2);
+
+        listener.onMessage(message(1, "u1"), channel);
+
+        //重试期间不拒绝，不会排到后面的消息之后
+        verify(channel).basicAck(1, false);
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void exhaustedUserIsParked() throws Exception {
+        failures.put(1L, 3);
+
+        listener.onMessage(message(1, "u1"), channel);
+        listener.onMessage(message(2, "u1"), channel);
+        listener.onMessage(message(3, "u2"), channel);
+
+        //同一用户后面的消息跟着进入死信队列，其他用户不受影响
+        InOrder order = inOrder(channel);
+        order.verify(channel).basicReject(1, false);
+        order.verify(channel).basicReject(2, false);
+        order.verify(channel).basicAck(3, false);
+        assertEquals(Collections.singleton("u1"), listener.getParked());
+    }
+
+    @Test
+    public void releasedUserIsProcessedAgain() throws Exception {
+        failures.put(1L, 3);
+        listener.onMessage(message(1, "u1"), channel);
+
+        assertTrue(listener.release("u1"));
+        listener.onMessage(message(2, "u1"), channel);
+
+        verify(channel).basicAck(2, false);
+    }
+
+    private static Message message(long tag, String user){
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        properties.setConsumerQueue("order.shard-0");
+        properties.setHeader(DeduplicatingMessageListener.CORRELATION_HEADER, "id-" + tag);
+        properties.setHeader("user", user);
+        return new Message(new byte[0], properties);
+    }
+}
@@ -0,0 +1,127 @@
+package com.df.service;
+
+import com.df.metrics.RabbitMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：发送限速的令牌租用、redis不可用时的本地份额和收紧后的速率上报
+ */
+public class PublishRateLimiterTest {
+
+    private PublishRateLimiter limiter;
+
+    //每次执行LEASE脚本时的ARGV
+    private final List<List<Object>> calls = new CopyOnWriteArrayList<>();
+
+    private volatile boolean redisDown;
+
+    @Before
+    public void setUp(){
+        RScript script = mock(RScript.class, invocation -> {
+            if(!"eval".equals(invocation.getMethod().getName())){
+                return null;
+            }
+            if(redisDown){
+                throw new IllegalStateException("redis不可用");
+            }
+            Object[] arguments = invocation.getArguments();
+            List<Object> argv = Arrays.asList(arguments).subList(4, arguments.length);
+            calls.add(argv);
+            //按请求的数量全部租给本实例
+            return Long.parseLong(argv.get(2).toString());
+        });
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RabbitMetrics rabbitMetrics = new RabbitMetrics();
+        ReflectionTestUtils.setField(rabbitMetrics, "meterRegistry", registry);
+        rabbitMetrics.init();
+
+        limiter = new PublishRateLimiter();
+        limiter.redissonClient = redissonClient;
+        limiter.rabbitMetrics = rabbitMetrics;
+        limiter.meterRegistry = registry;
+        ReflectionTestUtils.setField(limiter, "ENABLED", true);
+        ReflectionTestUtils.setField(limiter, "KEY", "publish_limit");
+        ReflectionTestUtils.setField(limiter, "BUDGETS", "order=100");
+        ReflectionTestUtils.setField(limiter, "DEFAULT_RATE", 0D);
+        ReflectionTestUtils.setField(limiter, "BURST", 1D);
+        ReflectionTestUtils.setField(limiter, "LEASE_MILLIS", 100L);
+        ReflectionTestUtils.setField(limiter, "MAX_WAIT", 0L);
+        ReflectionTestUtils.setField(limiter, "FALLBACK_SHARE", 0.5D);
+        //定时调整由测试直接调用
+        ReflectionTestUtils.setField(limiter, "ADJUST_INTERVAL", 3600000L);
+        ReflectionTestUtils.setField(limiter, "LATENCY_THRESHOLD", 50D);
+        ReflectionTestUtils.setField(limiter, "DECREASE", 0.5D);
+        ReflectionTestUtils.setField(limiter, "INCREASE", 0.1D);
+        ReflectionTestUtils.setField(limiter, "MIN_FACTOR", 0.2D);
+    }
+
+    @After
+    public void tearDown(){
+        limiter.stop();
+    }
+
+    @Test
+    public void firstAcquireUsesPrimedLease(){
+        limiter.init();
+
+        assertTrue(limiter.tryAcquire("order", 1));
+        //100/s租用100ms的令牌
+        assertEquals("10", calls.get(0).get(2));
+    }
+
+    @Test
+    public void unlimitedExchangeIsNotLeased(){
+        limiter.init();
+
+        assertTrue(limiter.tryAcquire("other", 1));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void fallsBackToLocalShareWhenRedisIsDown(){
+        redisDown = true;
+        limiter.init();
+
+        assertTrue(limiter.tryAcquire("order", 1));
+        assertFalse((Boolean) limiter.stats().get("redisAvailable"));
+    }
+
+    @Test
+    public void tightenedRateIsReportedToSharedBucket(){
+        limiter.init();
+        calls.clear();
+
+        limiter.onBlocked(new ConnectionBlockedEvent(mock(Connection.class), "low on memory"));
+        ReflectionTestUtils.invokeMethod(limiter, "adjust");
+
+        //只上报不租用，其他实例按最小的速率补充令牌
+        List<Object> report = calls.get(calls.size() - 1);
+        assertEquals(20D, Double.parseDouble(report.get(0).toString()), 1e-9);
+        assertEquals("0", report.get(2));
+    }
+}
@@ -0,0 +1,112 @@
+package com.df.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Lin
+ * @create 2026/10/17
+ * @since 1.0.0
+ * (功能)：多个lane共用工作线程时的加权轮询和线程上限
+ */
+public class WeightedFairExecutorTest {
+
+    private WeightedFairExecutor executor;
+
+    @After
+    public void tearDown(){
+        executor.shutdown();
+    }
+
+    @Test
+    public void backloggedLanesShareByWeight() throws Exception {
+        executor = new WeightedFairExecutor("test", 1);
+        Executor gate = executor.lane("gate", 1, 0);
+        Executor order = executor.lane("order", 3, 0);
+        Executor bulk = executor.lane("bulk", 1, 0);
+        List<String> executed = new ArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(16);
+        //先占住唯一的线程，两个lane都积压后再放开
+        gate.execute(() -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 8; i++) {
+            order.execute(record(executed, "order", done));
+            bulk.execute(record(executed, "bulk", done));
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        //平滑加权轮询按3:1交错，不会连续执行完一个lane
+        assertEquals(Arrays.asList("order", "order", "bulk", "order", "order", "order", "bulk", "order"),
+                executed.subList(0, 8));
+    }
+
+    @Test
+    public void cappedLaneLeavesWorkersForOthers() throws Exception {
+        executor = new WeightedFairExecutor("test", 2);
+        Executor bulk = executor.lane("bulk", 10, 1);
+        Executor order = executor.lane("order", 1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            bulk.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CountDownLatch orderDone = new CountDownLatch(1);
+
+        order.execute(orderDone::countDown);
+
+        //bulk最多占一个线程，order不用等bulk积压处理完
+        assertTrue(orderDone.await(5, TimeUnit.SECONDS));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) executor.stats().get("bulk");
+        assertEquals(1, stats.get("running"));
+        assertEquals(2, stats.get("queued"));
+        release.countDown();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectsAfterShutdown(){
+        executor = new WeightedFairExecutor("test", 1);
+        Executor lane = executor.lane("order", 1, 0);
+        executor.shutdown();
+
+        lane.execute(() -> { });
+    }
+
+    private static Runnable record(List<String> executed, String lane, CountDownLatch done){
+        return () -> {
+            //只有一个工作线程，按执行顺序追加
+            executed.add(lane);
+            done.countDown();
+        };
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}